@@ -38,15 +38,19 @@ public class Base64Encoding implements UnfCons {
 
     private static String DEFAULT_CHAR_ENCODING = "UTF-8";
     private static Logger mLog = Logger.getLogger(Base64Encoding.class.getName());
-    /** default byte order */
-    private static ByteOrder border = ByteOrder.BIG_ENDIAN;
 
-    public Base64Encoding() {
+    static {
         if (!DEBUG) {
             mLog.setLevel(Level.WARNING);
         }
     }
 
+    /** default byte order */
+    private static ByteOrder border = ByteOrder.BIG_ENDIAN;
+
+    public Base64Encoding() {
+    }
+
     public Base64Encoding(ByteOrder ord) {
         border = ord;
     }
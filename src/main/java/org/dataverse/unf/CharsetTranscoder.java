@@ -0,0 +1,174 @@
+// Copyright 2023 Dataverse Core Team <support@dataverse.org>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// SPDX-License-Identifier: Apache-2.0
+
+/**
+ * Description: Converts bytes from an original to a final encoding, as
+ *              UtilsConverter.byteConverter does, with the Charsets
+ *              resolved once and one decoder and encoder reused, with
+ *              their buffers, for all the values of a column.
+ *
+ *              From ISO-8859-1 or windows-1252 to UTF-8 every byte is
+ *              one char, and the conversion is a lookup in a table
+ *              with the UTF-8 bytes of the 256 chars.
+ *
+ *              Not thread-safe: the output buffer is reused.
+ */
+package org.dataverse.unf;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+final class CharsetTranscoder {
+
+    /** the bytes are not converted */
+    private final boolean identity;
+    /** UTF-8 bytes of the byte values of a single byte encoding, or null */
+    private final byte[][] table;
+    private final CharsetDecoder decoder;
+    private final CharsetEncoder encoder;
+    /** decoded chars */
+    private CharBuffer chars = CharBuffer.allocate(0);
+    /** converted bytes, with room for one more byte */
+    private byte[] out = new byte[0];
+
+    /**
+     * Constructor; unsupported encodings, or encodings that cannot encode,
+     * are replaced with the default Charset as in UtilsConverter.byteConverter
+     *
+     * @param from String with name of original encoding
+     * @param to String with name of final encoding
+     */
+    CharsetTranscoder(String from, String to) {
+        identity = from.equals(to);
+        Charset original = Charset.defaultCharset();
+        Charset fcs = original;
+        if (Charset.isSupported(from) && Charset.forName(from).canEncode()) {
+            fcs = Charset.forName(from);
+        }
+        Charset tcs = original;
+        if (Charset.isSupported(to) && Charset.forName(to).canEncode()) {
+            tcs = Charset.forName(to);
+        }
+        decoder = fcs.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        encoder = tcs.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        String fname = fcs.name();
+        if (!identity && StandardCharsets.UTF_8.equals(tcs)
+                && (fname.equals("ISO-8859-1") || fname.equals("windows-1252"))) {
+            table = new byte[256][];
+            for (int b = 0; b < 256; ++b) {
+                String c = new String(new byte[]{(byte) b}, fcs);
+                table[b] = c.getBytes(StandardCharsets.UTF_8);
+            }
+        } else {
+            table = null;
+        }
+    }
+
+    /**
+     * @return boolean whether the bytes are left as they are
+     */
+    boolean isIdentity() {
+        return identity;
+    }
+
+    /**
+     * Converts bytes to the final encoding; the result is in the
+     * buffer returned by getBuffer until the next call
+     *
+     * @param in byte array in the original encoding
+     * @param off index of the first byte
+     * @param len number of bytes
+     * @return number of converted bytes in the buffer
+     */
+    int transcode(byte[] in, int off, int len) {
+        if (identity) {
+            ensure(len);
+            System.arraycopy(in, off, out, 0, len);
+            return len;
+        }
+        if (table != null) {
+            ensure(3 * len);
+            int n = 0;
+            int end = off + len;
+            for (int k = off; k < end; ++k) {
+                byte b = in[k];
+                if (b >= 0) {
+                    out[n++] = b;
+                } else {
+                    byte[] u = table[b & 0xFF];
+                    for (int j = 0; j < u.length; ++j) {
+                        out[n++] = u[j];
+                    }
+                }
+            }
+            return n;
+        }
+        int nc = (int) Math.ceil(decoder.maxCharsPerByte() * len);
+        if (chars.capacity() < nc) {
+            chars = CharBuffer.allocate(nc);
+        }
+        chars.clear();
+        decoder.reset();
+        decoder.decode(ByteBuffer.wrap(in, off, len), chars, true);
+        decoder.flush(chars);
+        chars.flip();
+        ensure((int) Math.ceil(encoder.maxBytesPerChar() * chars.remaining()));
+        ByteBuffer bytes = ByteBuffer.wrap(out);
+        encoder.reset();
+        encoder.encode(chars, bytes, true);
+        encoder.flush(bytes);
+        return bytes.position();
+    }
+
+    /**
+     * @param in byte array in the original encoding
+     * @return byte array with a copy of the converted bytes
+     */
+    byte[] convert(byte[] in) {
+        if (identity) {
+            return in;
+        }
+        int n = transcode(in, 0, in.length);
+        byte[] res = new byte[n];
+        System.arraycopy(out, 0, res, 0, n);
+        return res;
+    }
+
+    /**
+     * @return byte array with the bytes of the last transcode
+     */
+    byte[] getBuffer() {
+        return out;
+    }
+
+    /**
+     * @param n integer number of bytes the buffer must hold
+     */
+    private void ensure(int n) {
+        if (out.length < n + 1) {
+            out = new byte[Math.max(n + 1, 2 * out.length)];
+        }
+    }
+}
@@ -0,0 +1,145 @@
+// Copyright 2023 Dataverse Core Team <support@dataverse.org>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// SPDX-License-Identifier: Apache-2.0
+
+/**
+ * Description: A MessageDigest that collects the bytes of many small
+ *              updates, such as the few bytes of one normalized value,
+ *              and feeds them to another MessageDigest in chunks of up
+ *              to CAPACITY bytes. The digest is the same as that of
+ *              the other MessageDigest updated with the same bytes.
+ *
+ *              The buffer starts small and grows up to CAPACITY, so
+ *              short columns do not pay for a large buffer. When a trace
+ *              sink is given, every update is passed to it as it comes,
+ *              before it is collected.
+ *
+ * Usage:  MessageDigest md = new DigestBuffer(UnfDigestUtils.newDigest(algor),
+ *                 UnfDigest.getTraceSink(), "UnfNumber");
+ */
+package org.dataverse.unf;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+final class DigestBuffer extends MessageDigest {
+
+    /** largest number of bytes collected before feeding the digest */
+    static final int CAPACITY = 1 << 15;
+    /** initial number of bytes of the buffer */
+    private static final int INITIAL = 1 << 9;
+
+    /** the MessageDigest fed with the collected bytes */
+    private final MessageDigest delegate;
+    /** bytes not fed yet */
+    private byte[] buffer = new byte[INITIAL];
+    /** number of bytes in buffer */
+    private int count = 0;
+    /** sink of every update, or null */
+    private final UnfTraceSink trace;
+    /** name of the calculator passed to trace */
+    private final String source;
+
+    /**
+     * @param delegate MessageDigest to feed, in its initial state
+     */
+    DigestBuffer(MessageDigest delegate) {
+        this(delegate, null, null);
+    }
+
+    /**
+     * @param delegate MessageDigest to feed, in its initial state
+     * @param trace UnfTraceSink that receives every update, or null
+     * @param source String with the name of the calculator
+     */
+    DigestBuffer(MessageDigest delegate, UnfTraceSink trace, String source) {
+        super(delegate.getAlgorithm());
+        this.delegate = delegate;
+        this.trace = trace;
+        this.source = source;
+    }
+
+    @Override
+    protected void engineUpdate(byte input) {
+        if (count == buffer.length) {
+            makeRoom(1);
+        }
+        buffer[count++] = input;
+        if (trace != null) {
+            trace.trace(source, buffer, count - 1, 1);
+        }
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len) {
+        if (trace != null) {
+            trace.trace(source, input, offset, len);
+        }
+        if (len > buffer.length - count) {
+            makeRoom(len);
+            if (len >= CAPACITY) {
+                delegate.update(input, offset, len);
+                return;
+            }
+        }
+        System.arraycopy(input, offset, buffer, count, len);
+        count += len;
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return delegate.getDigestLength();
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        flush();
+        return delegate.digest();
+    }
+
+    @Override
+    protected void engineReset() {
+        count = 0;
+        delegate.reset();
+    }
+
+    /**
+     * Grows the buffer, or feeds the collected bytes once it is full
+     *
+     * @param len integer number of bytes to add
+     */
+    private void makeRoom(int len) {
+        if (buffer.length < CAPACITY) {
+            int size = buffer.length;
+            while (size < CAPACITY && size - count < len) {
+                size *= 2;
+            }
+            buffer = Arrays.copyOf(buffer, size);
+        }
+        if (buffer.length - count < len) {
+            flush();
+        }
+    }
+
+    /**
+     * Feeds the collected bytes to the delegate
+     */
+    private void flush() {
+        if (count > 0) {
+            delegate.update(buffer, 0, count);
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,587 @@
+// Copyright 2023 Dataverse Core Team <support@dataverse.org>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// SPDX-License-Identifier: Apache-2.0
+
+/**
+ * Description: Rounding routine for numbers that writes bytes
+ *
+ *              Produces the same canonical form as RoundRoutines.Genround,
+ *              but writes it as ASCII bytes into a caller supplied buffer.
+ *              The decimal digits of a double are taken from its shortest
+ *              representation (as in Double.toString), rounded to 16 digits
+ *              (MathContext.DECIMAL64) and then to the requested number of
+ *              digits, both with RoundingMode.HALF_EVEN, using only the
+ *              scratch arrays of the instance: no BigDecimal, format
+ *              strings or regular expressions are involved.
+ *
+ * Output: +d.ddde+x\n as in RoundRoutines, e.g. +7.5216e+1\n for 75.216
+ *         at 7 digits; the null byte is left to the caller.
+ *
+ *         Integers up to 2^53 are rounded with long arithmetic only.
+ *         BigDecimal and BigInteger are rounded as they are, with a
+ *         MathContext kept for the last number of digits, without
+ *         going through their double value.
+ *
+ * Usage:  RoundNumber rout = new RoundNumber();
+ *         int end = rout.GenroundBytes(number, digits, buf, 0);
+ *
+ * An instance is not thread safe, but it is cheap and keeps no state
+ * between calls: use one per column or per thread.
+ *
+ * byteTable and shortTable hold the canonical form, with the null byte,
+ * of every byte and short value; they are built once per number of
+ * digits and shared by all threads.
+ */
+package org.dataverse.unf;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class RoundNumber implements UnfCons {
+
+    /** significant digits kept by MathContext.DECIMAL64 */
+    private static final int DECIMAL64_DIGITS = 16;
+    /** ascii codes of the canonical form */
+    private static final byte PLUS = (byte) Ucnt.plus.getUcode();
+    private static final byte MINUS = (byte) Ucnt.min.getUcode();
+    private static final byte DOT = (byte) Ucnt.dot.getUcode();
+    private static final byte E = (byte) Ucnt.e.getUcode();
+    private static final byte ZERO = (byte) Ucnt.zero.getUcode();
+    private static final byte EOL = (byte) creturn;
+    private static final byte[] NAN = {'+', 'n', 'a', 'n'};
+    private static final byte[] PLUS_INF = {'+', 'i', 'n', 'f'};
+    private static final byte[] MINUS_INF = {'-', 'i', 'n', 'f'};
+    /** largest magnitude of long with an exact double value */
+    private static final long MAX_EXACT = 1L << 53;
+    /** decimal exponents of the non zero, finite values of double */
+    private static final int MIN_DOUBLE_EXP = -323;
+    private static final int MAX_DOUBLE_EXP = 307;
+    /** powers of 10 that fit in a long */
+    private static final long[] POW10 = new long[19];
+
+    static {
+        POW10[0] = 1L;
+        for (int k = 1; k < POW10.length; ++k) {
+            POW10[k] = POW10[k - 1] * 10;
+        }
+    }
+
+    /** decimal digits of Byte.MAX_VALUE and Short.MAX_VALUE:
+     *  rounding to more digits leaves the values unchanged */
+    private static final int BYTE_DIGITS = 3;
+    private static final int SHORT_DIGITS = 5;
+    /** tables by number of digits, built on first use */
+    private static final AtomicReferenceArray<UnfByteTable> BYTE_TABLES =
+            new AtomicReferenceArray<UnfByteTable>(BYTE_DIGITS + 1);
+    private static final AtomicReferenceArray<UnfByteTable> SHORT_TABLES =
+            new AtomicReferenceArray<UnfByteTable>(SHORT_DIGITS + 1);
+
+    /** receives the shortest representation of a double */
+    private final StringBuilder repr = new StringBuilder(32);
+    /** significant digits of the value, no leading or trailing 0 */
+    private final byte[] mant = new byte[32];
+    /** digits after rounding */
+    private final byte[] work = new byte[32];
+    private int nmant;
+    /** decimal exponent of the first significant digit */
+    private int exp10;
+    private boolean negative;
+    /** rounds BigDecimal to the last number of digits requested */
+    private MathContext context = null;
+
+    /**
+     * @param digits integer number of decimal digits
+     * @return the largest number of bytes GenroundBytes writes
+     * for a double, plus one for the null byte
+     */
+    public static int maxBytes(int digits) {
+        return Math.max(digits, DECIMAL64_DIGITS) + 16;
+    }
+
+    /**
+     * Writes the canonical form of a double into buf
+     *
+     * @param numb double value
+     * @param digits integer number of decimal digits with decimal point
+     * @param buf byte array with at least maxBytes(digits) - 1 bytes from pos
+     * @param pos index in buf where to start writing
+     * @return index in buf after the last byte written
+     */
+    public int GenroundBytes(double numb, int digits, byte[] buf, int pos) {
+        if (numb == 0.0d) {
+            // the sign bit tells positive and negative zero apart
+            buf[pos++] = (Double.doubleToRawLongBits(numb) < 0) ? MINUS : PLUS;
+            buf[pos++] = ZERO;
+            buf[pos++] = DOT;
+            buf[pos++] = E;
+            buf[pos++] = PLUS;
+            buf[pos++] = EOL;
+            return pos;
+        }
+        if (Double.isNaN(numb)) {
+            return special(NAN, buf, pos);
+        }
+        if (Double.isInfinite(numb)) {
+            return special(numb > 0 ? PLUS_INF : MINUS_INF, buf, pos);
+        }
+        decompose(numb);
+        return emit(digits, buf, pos);
+    }
+
+    /**
+     * Writes the canonical forms of a double at several numbers of
+     * digits; its shortest representation is parsed only once.
+     *
+     * @param numb double value
+     * @param digits array of integer numbers of decimal digits
+     * @param bufs byte arrays, bufs[i] with at least maxBytes(digits[i]) - 1 bytes
+     * @param ends integer array; ends[i] receives the number of bytes written in bufs[i]
+     */
+    public void GenroundBytes(double numb, int[] digits, byte[][] bufs, int[] ends) {
+        if (numb == 0.0d || Double.isNaN(numb) || Double.isInfinite(numb)) {
+            for (int i = 0; i < digits.length; ++i) {
+                ends[i] = GenroundBytes(numb, digits[i], bufs[i], 0);
+            }
+            return;
+        }
+        decompose(numb);
+        for (int i = 0; i < digits.length; ++i) {
+            ends[i] = emit(digits[i], bufs[i], 0);
+        }
+    }
+
+    /**
+     * Writes the canonical form of an integer into buf. Integers
+     * with at most 53 bits are exact as double, so their digits are
+     * those of Double.toString and are rounded with long arithmetic;
+     * larger ones go through the double value as before.
+     *
+     * @param numb long value
+     * @param digits integer number of decimal digits with decimal point
+     * @param buf byte array with at least maxBytes(digits) - 1 bytes from pos
+     * @param pos index in buf where to start writing
+     * @return index in buf after the last byte written
+     */
+    public int GenroundBytes(long numb, int digits, byte[] buf, int pos) {
+        if (numb == 0L) {
+            return GenroundBytes(0.0d, digits, buf, pos);
+        }
+        if (numb > MAX_EXACT || numb < -MAX_EXACT) {
+            return GenroundBytes((double) numb, digits, buf, pos);
+        }
+        long m = numb < 0 ? -numb : numb;
+        int nd = countDigits(m);
+        int expnt = nd - 1;
+        int dgt = Math.max(digits, 1);
+        if (nd > dgt) {
+            long p = POW10[nd - dgt];
+            long q = m / p;
+            long rem = m - q * p;
+            long half = p >> 1;
+            if (rem > half || (rem == half && (q & 1L) == 1L)) {
+                q++;
+                if (q == POW10[dgt]) {
+                    q = POW10[dgt - 1];
+                    expnt++;
+                }
+            }
+            m = q;
+        }
+        return digits(m, expnt, numb < 0, buf, pos);
+    }
+
+    /**
+     * Writes the canonical form of a BigDecimal into buf, rounding
+     * the value itself to digits. Only values beyond the range of
+     * double are checked against their double value, which is 0 or
+     * infinite for some of them as in RoundRoutines.
+     *
+     * @param numb BigDecimal value
+     * @param digits integer number of decimal digits with decimal point
+     * @param buf byte array with at least maxBytes(digits) - 1 bytes from pos
+     * @param pos index in buf where to start writing
+     * @return index in buf after the last byte written
+     */
+    public int GenroundBytes(BigDecimal numb, int digits, byte[] buf, int pos) {
+        if (isSpecial(numb)) {
+            return GenroundBytes(numb.doubleValue(), digits, buf, pos);
+        }
+        return decimal(numb.round(context(digits)), buf, pos);
+    }
+
+    /**
+     * @param numb BigDecimal value
+     * @return boolean whether GenroundBytes writes numb as zero or
+     * as an infinite value, which do not depend on the digits
+     */
+    public static boolean isSpecial(BigDecimal numb) {
+        if (numb.signum() == 0) {
+            return true;
+        }
+        long expnt = (long) numb.precision() - numb.scale() - 1;
+        if (expnt < MIN_DOUBLE_EXP || expnt > MAX_DOUBLE_EXP) {
+            double d = numb.doubleValue();
+            return d == 0.0d || Double.isInfinite(d);
+        }
+        return false;
+    }
+
+    /**
+     * Writes the canonical form of a BigInteger into buf; as in
+     * RoundRoutines, the value is first rounded to 16 digits
+     * (MathContext.DECIMAL64) and then to digits.
+     *
+     * @param numb BigInteger value
+     * @param digits integer number of decimal digits with decimal point
+     * @param buf byte array with at least maxBytes(digits) - 1 bytes from pos
+     * @param pos index in buf where to start writing
+     * @return index in buf after the last byte written
+     */
+    public int GenroundBytes(BigInteger numb, int digits, byte[] buf, int pos) {
+        if (isSpecial(numb)) {
+            return GenroundBytes(numb.doubleValue(), digits, buf, pos);
+        }
+        BigDecimal dec = new BigDecimal(numb, MathContext.DECIMAL64);
+        return decimal(dec.round(context(digits)), buf, pos);
+    }
+
+    /**
+     * @param numb BigInteger value
+     * @return boolean whether GenroundBytes writes numb as zero or
+     * as an infinite value, which do not depend on the digits
+     */
+    public static boolean isSpecial(BigInteger numb) {
+        if (numb.signum() == 0) {
+            return true;
+        }
+        return numb.bitLength() > Double.MAX_EXPONENT
+                && Double.isInfinite(numb.doubleValue());
+    }
+
+    /**
+     * @param digits integer number of decimal digits with decimal point
+     * @return MathContext with HALF_EVEN rounding to digits
+     */
+    private MathContext context(int digits) {
+        int dgt = Math.max(digits, 1);
+        if (context == null || context.getPrecision() != dgt) {
+            context = new MathContext(dgt, RoundingMode.HALF_EVEN);
+        }
+        return context;
+    }
+
+    /**
+     * Writes a rounded, non zero BigDecimal
+     *
+     * @param numb BigDecimal after rounding
+     * @param buf byte array to write to
+     * @param pos index in buf where to start writing
+     * @return index in buf after the last byte written
+     */
+    private static int decimal(BigDecimal numb, byte[] buf, int pos) {
+        BigInteger unscaled = numb.unscaledValue();
+        if (unscaled.bitLength() < 63) {
+            long m = unscaled.longValue();
+            boolean neg = m < 0;
+            if (neg) {
+                m = -m;
+            }
+            return digits(m, countDigits(m) - 1 - numb.scale(), neg, buf, pos);
+        }
+        String str = unscaled.abs().toString();
+        int cnt = str.length();
+        while (cnt > 1 && str.charAt(cnt - 1) == '0') {
+            cnt--;
+        }
+        buf[pos++] = numb.signum() < 0 ? MINUS : PLUS;
+        buf[pos++] = (byte) str.charAt(0);
+        buf[pos++] = DOT;
+        for (int k = 1; k < cnt; ++k) {
+            buf[pos++] = (byte) str.charAt(k);
+        }
+        buf[pos++] = E;
+        return exponent(str.length() - 1 - numb.scale(), buf, pos);
+    }
+
+    /**
+     * Writes the significant digits of a positive long, without
+     * trailing 0, and the exponent
+     *
+     * @param m positive long with the significant digits
+     * @param expnt integer decimal exponent of the first digit
+     * @param neg boolean whether the value is negative
+     * @param buf byte array to write to
+     * @param pos index in buf where to start writing
+     * @return index in buf after the last byte written
+     */
+    private static int digits(long m, int expnt, boolean neg, byte[] buf, int pos) {
+        while (m >= 10 && m % 10 == 0) {
+            m /= 10;
+        }
+        int cnt = countDigits(m);
+        buf[pos++] = neg ? MINUS : PLUS;
+        buf[pos] = (byte) (ZERO + m / POW10[cnt - 1]);
+        buf[pos + 1] = DOT;
+        for (int k = pos + cnt; k > pos + 1; --k) {
+            buf[k] = (byte) (ZERO + m % 10);
+            m /= 10;
+        }
+        pos += cnt + 1;
+        buf[pos++] = E;
+        return exponent(expnt, buf, pos);
+    }
+
+    /**
+     * Table of the bytes digested for each byte value: the entry
+     * at the unsigned value of v is the canonical form of v with the null byte,
+     * Byte.MAX_VALUE is a missing value and has the form of NaN.
+     *
+     * @param digits integer number of decimal digits with decimal point
+     * @return UnfByteTable with 256 entries
+     */
+    public static UnfByteTable byteTable(int digits) {
+        return table(BYTE_TABLES, 8, Byte.MAX_VALUE, Math.min(Math.max(digits, 1), BYTE_DIGITS));
+    }
+
+    /**
+     * Table of the bytes digested for each short value: the entry
+     * at the unsigned value of v is the canonical form of v with the null byte,
+     * Short.MAX_VALUE is a missing value and has the form of NaN.
+     *
+     * @param digits integer number of decimal digits with decimal point
+     * @return UnfByteTable with 65536 entries
+     */
+    public static UnfByteTable shortTable(int digits) {
+        return table(SHORT_TABLES, 16, Short.MAX_VALUE, Math.min(Math.max(digits, 1), SHORT_DIGITS));
+    }
+
+    private static UnfByteTable table(AtomicReferenceArray<UnfByteTable> tables,
+            int bits, long missing, int digits) {
+        UnfByteTable table = tables.get(digits);
+        if (table == null) {
+            // threads racing here build equal tables; the first one is kept
+            tables.compareAndSet(digits, null, buildTable(bits, missing, digits));
+            table = tables.get(digits);
+        }
+        return table;
+    }
+
+    /**
+     * @param bits integer size in bits of the values
+     * @param missing value that marks a missing value
+     * @param digits integer number of decimal digits with decimal point
+     * @return UnfByteTable indexed by the unsigned bits of the values
+     */
+    private static UnfByteTable buildTable(int bits, long missing, int digits) {
+        RoundNumber rout = new RoundNumber();
+        int size = 1 << bits;
+        int width = maxBytes(digits);
+        byte[] data = new byte[size * width];
+        int[] offsets = new int[size + 1];
+        int pos = 0;
+        for (int k = 0; k < size; ++k) {
+            long v = ((long) k << (64 - bits)) >> (64 - bits); //sign extension
+            offsets[k] = pos;
+            pos = (v == missing)
+                    ? rout.GenroundBytes(Double.NaN, digits, data, pos)
+                    : rout.GenroundBytes(v, digits, data, pos);
+            if (nullbyte) {
+                data[pos++] = (byte) zeroscape;
+            }
+        }
+        offsets[size] = pos;
+        byte[] packed = new byte[pos];
+        System.arraycopy(data, 0, packed, 0, pos);
+        return new UnfByteTable(packed, offsets);
+    }
+
+    /**
+     * @param m positive long
+     * @return number of decimal digits in m
+     */
+    private static int countDigits(long m) {
+        int nd = 1;
+        while (nd < POW10.length && m >= POW10[nd]) {
+            nd++;
+        }
+        return nd;
+    }
+
+    private static int special(byte[] token, byte[] buf, int pos) {
+        System.arraycopy(token, 0, buf, pos, token.length);
+        pos += token.length;
+        buf[pos++] = EOL;
+        return pos;
+    }
+
+    /**
+     * Fills mant, nmant, exp10 and negative from the shortest
+     * representation of a finite, non zero double, rounded to
+     * 16 significant digits
+     *
+     * @param numb double value
+     */
+    private void decompose(double numb) {
+        repr.setLength(0);
+        repr.append(numb);
+        int len = repr.length();
+        int i = 0;
+        negative = repr.charAt(0) == '-';
+        if (negative) {
+            i++;
+        }
+        int before = 0; //digits before the decimal point
+        boolean point = false;
+        boolean leading = true;
+        int lead = 0; //leading 0 digits
+        nmant = 0;
+        for (; i < len; ++i) {
+            char c = repr.charAt(i);
+            if (c == '.') {
+                point = true;
+            } else if (c == 'E') {
+                break;
+            } else {
+                if (!point) {
+                    before++;
+                }
+                if (leading && c == '0') {
+                    lead++;
+                } else {
+                    leading = false;
+                    mant[nmant++] = (byte) (c - '0');
+                }
+            }
+        }
+        int expnt = 0;
+        if (i < len) {
+            boolean neg = repr.charAt(++i) == '-';
+            if (neg) {
+                i++;
+            }
+            for (; i < len; ++i) {
+                expnt = expnt * 10 + (repr.charAt(i) - '0');
+            }
+            if (neg) {
+                expnt = -expnt;
+            }
+        }
+        exp10 = before - 1 - lead + expnt;
+        while (nmant > 1 && mant[nmant - 1] == 0) {
+            nmant--;
+        }
+        if (nmant > DECIMAL64_DIGITS) {
+            nmant = round(mant, nmant, DECIMAL64_DIGITS, mant);
+        }
+    }
+
+    /**
+     * Rounds the digits in src to dgt digits with HALF_EVEN into dst,
+     * adjusting exp10 if the rounding carries into a new digit.
+     *
+     * @param src significant digits, last digit not 0
+     * @param n number of digits in src
+     * @param dgt number of digits to keep
+     * @param dst digits after rounding, may be src
+     * @return number of digits in dst, trailing 0 removed
+     */
+    private int round(byte[] src, int n, int dgt, byte[] dst) {
+        if (src != dst) {
+            System.arraycopy(src, 0, dst, 0, Math.min(n, dgt));
+        }
+        if (n <= dgt) {
+            return n;
+        }
+        int next = src[dgt];
+        // the last digit is never 0, so a 5 followed by more digits is above half
+        boolean up = next > 5 || (next == 5 && (n > dgt + 1 || (src[dgt - 1] & 1) == 1));
+        int cnt = dgt;
+        if (up) {
+            int k = dgt - 1;
+            while (k >= 0 && dst[k] == 9) {
+                dst[k--] = 0;
+            }
+            if (k < 0) {
+                dst[0] = 1;
+                exp10++;
+                cnt = 1;
+            } else {
+                dst[k]++;
+            }
+        }
+        while (cnt > 1 && dst[cnt - 1] == 0) {
+            cnt--;
+        }
+        return cnt;
+    }
+
+    /**
+     * Writes the decomposed value rounded to digits
+     *
+     * @param digits integer number of decimal digits with decimal point
+     * @param buf byte array to write to
+     * @param pos index in buf where to start writing
+     * @return index in buf after the last byte written
+     */
+    private int emit(int digits, byte[] buf, int pos) {
+        int saved = exp10;
+        int cnt = round(mant, nmant, Math.max(digits, 1), work);
+        buf[pos++] = negative ? MINUS : PLUS;
+        buf[pos++] = (byte) (ZERO + work[0]);
+        buf[pos++] = DOT;
+        for (int k = 1; k < cnt; ++k) {
+            buf[pos++] = (byte) (ZERO + work[k]);
+        }
+        buf[pos++] = E;
+        int expnt = exp10;
+        exp10 = saved;
+        return exponent(expnt, buf, pos);
+    }
+
+    /**
+     * Writes the sign and digits of the exponent, no leading 0,
+     * and the end of line
+     *
+     * @param expnt integer decimal exponent
+     * @param buf byte array to write to
+     * @param pos index in buf after the 'e'
+     * @return index in buf after the last byte written
+     */
+    private static int exponent(int expnt, byte[] buf, int pos) {
+        if (expnt < 0) {
+            buf[pos++] = MINUS;
+            expnt = -expnt;
+        } else {
+            buf[pos++] = PLUS;
+        }
+        if (expnt > 0) {
+            int start = pos;
+            while (expnt > 0) {
+                buf[pos++] = (byte) (ZERO + expnt % 10);
+                expnt /= 10;
+            }
+            for (int l = start, r = pos - 1; l < r; ++l, --r) {
+                byte t = buf[l];
+                buf[l] = buf[r];
+                buf[r] = t;
+            }
+        }
+        buf[pos++] = EOL;
+        return pos;
+    }
+}
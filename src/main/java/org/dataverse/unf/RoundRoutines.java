@@ -47,6 +47,10 @@
  * For String of chars, e.g. String ss = "news from ado";
  *      roundRoutines.Genround(ss,digits);
  *
+ * An instance keeps no state between calls other than its settings,
+ * so it can be reused for all the values of a column; instances
+ * do not share mutable state and can be used from different threads.
+ *
  * @Author: Elena Villalon
  * <a heref= email: evillalon@iq.harvard.edu/>
  *       
@@ -55,9 +59,8 @@ package org.dataverse.unf;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.math.RoundingMode;
-import java.math.MathContext;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Locale;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -66,14 +69,19 @@ public class RoundRoutines<T extends Number> implements UnfCons {
 
     public static final long serialVersionUID = 1111L;
     private static Logger mLog = Logger.getLogger(RoundRoutines.class.getName());
+
+    static {
+        if (!DEBUG) {
+            mLog.setLevel(Level.WARNING);
+        }
+    }
+
     /**number of digits with decimal point*/
     private int digits;
     /**the Locale language and country*/
     private Locale loc;
     /**some formatting for special numbers*/
     private FormatNumbSymbols symb = new FormatNumbSymbols();
-    /**no leading and trailing 0 digits in exponent and mantissa*/
-    private static final boolean nozero = true; //default is true
     /** radix for numbers*/
     private int radix = 10;
     /**unicode characters*/
@@ -81,29 +89,32 @@ public class RoundRoutines<T extends Number> implements UnfCons {
     private static final char plus = Ucnt.plus.getUcode(); //"+" sign
     private static final char min = Ucnt.min.getUcode(); //"-"
     private static final char e = Ucnt.e.getUcode(); //"e"
-    private static final char percntg = Ucnt.percntg.getUcode(); //"%"
-    private static final char pndsgn = Ucnt.pndsgn.getUcode(); //"#"
     private static final char zero = Ucnt.zero.getUcode();
     private static final char s = Ucnt.s.getUcode();//"s"
     private static final char ffeed = Ucnt.frmfeed.getUcode();
     private static final char creturn = Ucnt.psxendln.getUcode();
+    /** canonical forms of zero and the special values */
+    private static final String PLUS_ZERO = "" + plus + zero + dot + e + plus + creturn;
+    private static final String MINUS_ZERO = "" + min + zero + dot + e + plus + creturn;
+    private static final String NAN = "+nan" + creturn;
+    private static final String PLUS_INF = "+inf" + creturn;
+    private static final String MINUS_INF = "-inf" + creturn;
     /** whether to append the null byte ('\0') the end of string */
-    private static boolean nullbyte = !UnfCons.nullbyte;
+    private boolean nullbyte = !UnfCons.nullbyte;
     /** check conversion from string to numeric for mix 
      * columns values (i.e. column can have chars and numbers)
      * */
-    private static boolean convertToNumber = false;
+    private static final boolean convertToNumber = false;
+    /** writes the canonical form of double values */
+    private final RoundNumber rnd = new RoundNumber();
+    /** scratch buffer for rnd */
+    private final byte[] canon = new byte[RoundNumber.maxBytes(INACCURATE_SPRINTF_DIGITS)];
 
     /**
      * Default constructor 
      */
     public RoundRoutines() {
-        if (!DEBUG) {
-            mLog.setLevel(Level.WARNING);
-        }
         this.digits = DEF_NDGTS;
-        this.symb = new FormatNumbSymbols();
-
     }
 
     /**
@@ -179,146 +190,88 @@ public class RoundRoutines<T extends Number> implements UnfCons {
      * @return String with the numeric value represented using IEEE 754
      */
     public String Genround(T numberValue, int digits, boolean nullByte) throws UnfException {
-        RoundRoutines.nullbyte = nullByte;
+        this.nullbyte = nullByte;
         
         if (numberValue == null) {
             throw new UnfException ("Missing (Null) value passed to Genround(Number)!");
         }
 
-        //the decimal separator symbol:
-        char sep = symb.getDecimalSep();
-
-         if (sep != dot) {
+        //the decimal separator symbol; the canonical forms always use the dot
+        if (symb.getDecimalSep() != dot) {
             mLog.warning("RoundRoutines: Decimal separator is not " +
                     "'\u002E' or a dot:.");
-            sep = '.';
-            // TODO: ?
         }
          
         if (digits < 0) {
             digits = this.digits;
         }
 
-        Double doubleValue = numberValue.doubleValue();
-
-        // Special handling for Zero, positive and negative:
-        
-        if (doubleValue.doubleValue() == 0.0d) {
-            // For Java's primitive type double the above 
-            // expression (... == 0.0d) evaluates to TRUE for both the positive 
-            // and negative zero!
-            
-            StringBuffer nullStringBuffer = new StringBuffer(); 
-
-            // However, the .equals() method supplied by the class 
-            // Double does differentiate between the two:
-            if (doubleValue.equals(new Double(0.0d))) {
-                nullStringBuffer.append(plus);
-            } else if (doubleValue.equals(new Double(-0.0d))) {
-                nullStringBuffer.append(min);
+        if (numberValue instanceof BigDecimal || numberValue instanceof BigInteger) {
+            // rounded as they are, without losing digits to doubleValue
+            byte[] buf = buffer(digits);
+            int end;
+            boolean special;
+            if (numberValue instanceof BigDecimal) {
+                end = rnd.GenroundBytes((BigDecimal) numberValue, digits, buf, 0);
+                special = RoundNumber.isSpecial((BigDecimal) numberValue);
             } else {
-                throw new UnfException("The zero value supplied is neither positive, nor negative... what?");
+                end = rnd.GenroundBytes((BigInteger) numberValue, digits, buf, 0);
+                special = RoundNumber.isSpecial((BigInteger) numberValue);
             }
-            nullStringBuffer.append(zero);
-            nullStringBuffer.append(sep);
-            nullStringBuffer.append(e);
-            nullStringBuffer.append(plus);
-            nullStringBuffer.append(creturn);
-            return nullStringBuffer.toString();
-        }
-        
-        
-        // Special handling for the special floating point values, 
-        // Double.NaN, Inf or -Inf:
-        
-        String specialValueToken = null; 
-        
-        if ((specialValueToken = RoundRoutinesUtils.specialNumb(doubleValue)) != null) {
-            StringBuffer specialValueBuffer = new StringBuffer();
-            /*
-             * Important: 
-             * Just like regular numeric values, and unlike missing values, 
-             * string representations of special values must be terminated with 
-             * new lines. -- L.A.  
-             */
-            specialValueBuffer.append(specialValueToken);
-            specialValueBuffer.append(creturn);
-           
-            return specialValueBuffer.toString();
-        } 
-        
-        BigDecimal bigDecimalValue = null;
-        
-        if (numberValue instanceof BigDecimal) {
-            bigDecimalValue = (BigDecimal) numberValue;
-        } else if (numberValue instanceof BigInteger) {
-            bigDecimalValue = new BigDecimal((BigInteger) numberValue, MathContext.DECIMAL64);
-        } else {
-            try {
-                bigDecimalValue = new BigDecimal(Double.toString(numberValue.doubleValue()), MathContext.DECIMAL64);
-            } catch (NumberFormatException ex) {
-                //mLog.fine("Caught an exception when trying to make a BigDecimal out of a .doubleValue() of a Number object; (most likely because it's a special value - ignoring)");
-                throw new UnfException("Caught an exception when trying to make a BigDecimal out of a .doubleValue() of a Number object; (an undetected special IEEE value perhaps?)");
+            // as for the other numbers, zero and the special values
+            // are written without the null byte
+            if (nullByte && !special) {
+                buf[end++] = (byte) nil;
             }
+            return new String(buf, 0, end, StandardCharsets.US_ASCII);
         }
-        
-        if (bigDecimalValue == null) {
-            throw new UnfException("Failed to convert the supplied Number value "+numberValue+" to BigDecimal.");
-        }
-
-        String fmt, fmtu;
 
+        double doubleValue = numberValue.doubleValue();
 
-        char[] str = {percntg, plus, pndsgn, sep}; //{'%','+', '#', '.'}
-
-        int dgt = (INACCURATE_SPRINTF) ? INACCURATE_SPRINTF_DIGITS : (digits - 1);
-
-        fmt = new String("%+#." + dgt + "e");
-        StringBuilder stringBuilder = new StringBuilder();
+        // zero, positive and negative, and the special values NaN, Inf
+        // and -Inf do not depend on the digits; just like regular numeric
+        // values, and unlike missing values, they end with new lines
+        String token = specialToken(doubleValue);
+        if (token != null) {
+            return token;
+        }
 
-        
-        //using the Unicode character symbols
-        stringBuilder.append(str);
-        stringBuilder.append(dgt);
-        stringBuilder.append(e);
-        fmtu = stringBuilder.toString();
-        stringBuilder = null;
-        
-        if (!fmtu.equalsIgnoreCase(fmt) && loc == new Locale("en", "US")) {
-            mLog.severe("RoundRoutines: Unicode & format strings do not agree");
-            // TODO:
-            // throw an exception here - ?
-            // what is this check for anyway? - could we just connclude that 
-            // it's irrelevant, now that we are using UTF8?
-            // -- L.A. Oct. 2014
+        // the digits of doubleValue are rounded by RoundNumber, which
+        // writes the same canonical form without BigDecimal or format strings
+        byte[] buf = buffer(digits);
+        int end = rnd.GenroundBytes(doubleValue, digits, buf, 0);
+        if (nullByte) {
+            buf[end++] = (byte) nil;
         }
+        return new String(buf, 0, end, StandardCharsets.US_ASCII);
+    }
 
-        // TODO: 
-        // Figure out why proper rounding is only applied when the supplied value 
-        // is NOT a native BigDecimal - ?? 
-        // (this is case is not really used in real life, as of now... -- but 
-        // it needs to be figured out nevertheless.)
-        // (or, maybe the assumption is that the BigDecimal was created with 
-        // the correct MathContext, which already specifies the rounding 
-        // algorithm that needs to be used?)
-        // -- L.A. Aug. 2014
-        // OK, ot rid of the different cases that were defined for handling
-        // BigDecimals and doubleValues differently... -- L.A. Oct. 2014
-        // TODO: 
-        // Document why we need RoundingMode.HALF_EVEN below, and not just 
-        // the default String representation of the value, below. 
-        // -- L.A. Aug. 2014
-        
-        
-        String tmp = String.format(loc, fmtu, bigDecimalValue.round(new MathContext(digits, RoundingMode.HALF_EVEN))); 
-        
-        String atoms[] = tmp.split(e + "");
+    /**
+     * @param numb double value
+     * @return String with the canonical form of numb if it is zero,
+     * NaN or infinite, otherwise null
+     */
+    private static String specialToken(double numb) {
+        if (numb == 0.0d) {
+            // == is true for both zeros, the sign bit tells them apart
+            return (Double.doubleToRawLongBits(numb) < 0) ? MINUS_ZERO : PLUS_ZERO;
+        }
+        if (Double.isNaN(numb)) {
+            return NAN;
+        }
+        if (Double.isInfinite(numb)) {
+            return (numb > 0) ? PLUS_INF : MINUS_INF;
+        }
+        return null;
+    }
 
-        stringBuilder = calcMantissa(atoms[0], sep);
-        stringBuilder.append(e);
-        stringBuilder.append(atoms[1].charAt(0)); //sign of exponent
-        stringBuilder.append(calcExponent(atoms[1]));
-        return stringBuilder.toString();
+    /**
+     * @param digits integer number of decimal digits with decimal point
+     * @return byte array large enough for RoundNumber.GenroundBytes
+     */
+    private byte[] buffer(int digits) {
+        int sz = RoundNumber.maxBytes(digits);
+        return (canon.length >= sz) ? canon : new byte[sz];
     }
 
     /**
@@ -344,70 +297,6 @@ public class RoundRoutines<T extends Number> implements UnfCons {
         return str.getBytes(to);
     }
 
-    /**
-     *
-     * @param atom String with the exponent including the sign
-     * @return StringBuffer representing exponent with no leading 0
-     *         and appending the end of line.
-     */
-    private StringBuffer calcExponent(String atom) {
-
-        StringBuffer build = new StringBuffer();
-
-        String expnt = atom.substring(1);
-        long lngmant = Long.parseLong(expnt);//remove leading 0's
-
-        if (lngmant > 0 || (lngmant == 0 && !nozero)) {
-            build.append(lngmant);
-        }
-
-        /**
-         * per specs append the end of line "\n" and
-         * null terminator
-         */
-        build.append(creturn);
-        if (nullbyte) {
-            build.append(nil);
-        }
-        return build;
-    }
-
-    /**
-     *
-     * @param atom String with the mantissa
-     * @param sep char the decimal point
-     * @param f boolean for number between (-1,1)
-     * @return StringBuilder with mantissa after removing trailing 0
-     */
-    private StringBuilder calcMantissa(String atom, char sep) {
-        StringBuilder build = new StringBuilder();
-        //sign and leading digit before decimal separator
-        char mag[] = {atom.charAt(0), atom.charAt(1)};
-        //canon[] :double check you have correct results
-        String canon[] = atom.split("\\" + sep);
-        if (!canon[0].equalsIgnoreCase(new String(mag))) {
-            mLog.severe("RoundRoutines:decimal separator no in right place");
-        }
-        build.append(mag);//sign and leading digit
-        build.append(sep);//decimal separator
-        String dec = atom.substring(3);//decimal part
-        if (!dec.equalsIgnoreCase(canon[1])) {
-            mLog.severe("RoundRoutines: decimal separator not right");
-        }
-
-        String tmp = new StringBuffer(dec).reverse().toString();
-        long tmpl = Long.parseLong(tmp); //remove trailing 0's
-        tmp = new StringBuffer((Long.toString(tmpl))).reverse().toString();
-
-        //removing trailing 0
-        if (tmpl == 0 && nozero) {
-            return build;
-        }
-
-        return build.append(tmp);
-
-    }
-
     /**
      * @param cobj CharSequence to format
      * @param digits integer with number of characters  to keep
@@ -424,45 +313,41 @@ public class RoundRoutines<T extends Number> implements UnfCons {
      * @return String formatted
      */
     public static String Genround(CharSequence cobj, int digits, boolean no) throws UnfException {
-        
-        // A special case for a character string made up entirely of 
-        // "blank space" characters - i.e., spaces, tabs and assorted newlines:
-        if ((((String) cobj).trim()).equals("")) {
-            // (or an empty string, for that matter... - except this method
-            // is NOT called on empty strings.)
-            // Current approach - if this "all-blank" is not longer than
-            // the cutoff limit ("digits" characters long), it is normalized
-            // to an empty string. If it is longer than digits, it is normalized
-            // to the first (digits - 1) characters (why not digits - ?)
-            // TODO: 
-            // VERIFY/FINALIZE THIS WITH MICAH ASAP!  
-            //  -- L.A. AUG. 17 2014
-            String res = "";
-            if (cobj.length() > digits) {
-                res = (String) cobj.subSequence(0, digits - 1);
-            }
-            res += creturn;
-            if (no) {
-                res += nil;
-            }
-            return res;
-        }
-        
-        boolean numeric = false;
-        if (convertToNumber) {
-            numeric = RoundRoutinesUtils.checkNumeric(cobj);
-        }
 
-        if (numeric) {
+        if (isNumeric(cobj)) {
             //only digits in obj use a BigInteger representation
             BigInteger bg = new BigInteger(cobj.toString());
             RoundRoutines<BigInteger> rout = new RoundRoutines<BigInteger>();
             return rout.Genround(bg, digits, no);
         }
 
-        //if is not digits
+        // A special case for a character string made up entirely of
+        // "blank space" characters - i.e., spaces, tabs and assorted newlines:
+        // if this "all-blank" is not longer than the cutoff limit ("digits"
+        // characters long), it is normalized to an empty string. If it is
+        // longer than digits, it is normalized to the first (digits - 1)
+        // characters (why not digits - ?)
+        // TODO:
+        // VERIFY/FINALIZE THIS WITH MICAH ASAP!
+        //  -- L.A. AUG. 17 2014
+        return new RoundString().normalize(cobj, digits, no).toString();
+    }
+
+    /**
+     * @return boolean whether strings with only digits are written as numbers
+     */
+    static boolean getConvertToNumber() {
+        return convertToNumber;
+    }
 
-        return (new RoundString().Genround((String) cobj, digits, no));
+    /**
+     * @param cobj CharSequence
+     * @return boolean whether cobj is written as a number, which is
+     * only the case when strings with only digits are converted
+     */
+    static boolean isNumeric(CharSequence cobj) {
+        return convertToNumber && !RoundString.isBlank(cobj)
+                && RoundRoutinesUtils.checkNumeric(cobj);
     }
 }
 
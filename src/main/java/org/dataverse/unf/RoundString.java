@@ -22,6 +22,10 @@
  *        String to apply the rounding routine;  
  *        
  * Output: String representation of formatted String.
+ *
+ *         The Strings are truncated by counting characters, without
+ *         format strings; normalize writes the canonical form of a
+ *         cell into a buffer that is reused for the next cell.
  * 
  * @Author Elena Villalon
  *  email:evillalon@iq.harvard.edu
@@ -29,6 +33,9 @@
  */
 package org.dataverse.unf;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
 import java.util.Locale;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -36,22 +43,28 @@ import java.util.logging.Logger;
 public class RoundString implements UnfCons {
 
     private static Logger mLog = Logger.getLogger(RoundString.class.getName());
-    //ucode characters
-    private static final char dot = Ucnt.dot.getUcode();//decimal separator "."
-    private static final char percntg = Ucnt.percntg.getUcode(); //"%"
-    private static final char s = Ucnt.s.getUcode();//"s"
+
+    static {
+        if (!DEBUG) {
+            mLog.setLevel(Level.WARNING);
+        }
+    }
+
     //language and country to format strings
     Locale loc = new Locale("en", "US");
     /** whether to append null byte ('\0') the end of String */
     private boolean nullbyte = true;
+    /** reusable buffer with the canonical form of the last String */
+    private char[] canon = new char[0];
+    /** view of canon returned by normalize */
+    private CharBuffer view = CharBuffer.wrap(canon);
+    /** scratch buffer to scan the blank characters of a Reader */
+    private char[] skip = null;
 
     /**
      * Default constructor
      */
     public RoundString() {
-        if (!DEBUG) {
-            mLog.setLevel(Level.WARNING);
-        }
     }
 
     /**
@@ -96,19 +109,154 @@ public class RoundString implements UnfCons {
     public String Genround(String str, int digits, boolean no) {
 
         nullbyte = no;
-        String fmtu = "" + percntg + dot + digits + s;
-        String fmt = "%." + digits + "s";
-        if (!fmtu.equalsIgnoreCase(fmt) && loc == new Locale("en", "US")) {
-            mLog.severe("RoundString: Unicode & format strings do not agree");
+        String tmp = String.valueOf(str);
+        return write(tmp, Math.min(tmp.length(), digits), no).toString();
+    }
+
+    /**
+     * Writes the canonical form of a cell of a String column:
+     * a cell made up entirely of blank characters (spaces, tabs and
+     * assorted newlines, anything that String.trim removes) is empty
+     * if it is not longer than digits, otherwise it keeps the first
+     * (digits - 1) characters; any other cell is truncated to digits
+     * characters. The end of line and the optional null byte follow.
+     *
+     * The buffer is reused, so the result is only valid until the
+     * next call.
+     *
+     * @param str CharSequence with the cell
+     * @param digits integer for number of characters
+     * @param no boolean whether to append null byte ('\0')
+     * @return CharBuffer with the canonical form of str
+     */
+    public CharBuffer normalize(CharSequence str, int digits, boolean no) {
+        int ln = str.length();
+        int n;
+        if (isBlank(str)) {
+            n = (ln > digits) ? digits - 1 : 0;
+        } else {
+            n = Math.min(ln, digits);
         }
-        String tmp = String.format(loc, fmtu, str);
-        tmp += creturn;
-        if (nullbyte) {
-            tmp += zeroscape;
+        return write(str, n, no);
+    }
+
+    /**
+     * Overloaded method for a cell read from a Reader; only the first
+     * digits characters are kept, and the rest of the cell is read, without
+     * keeping it, only while all the characters are blank. The Reader
+     * is not closed.
+     *
+     * @param in Reader with the cell
+     * @param digits integer for number of characters
+     * @param no boolean whether to append null byte ('\0')
+     * @return CharBuffer with the canonical form of the cell
+     * @throws IOException
+     */
+    public CharBuffer normalize(Reader in, int digits, boolean no) throws IOException {
+        ensure(digits);
+        int n = 0;
+        int r = 0;
+        while (n < digits && (r = in.read(canon, n, digits - n)) >= 0) {
+            n += r;
+        }
+        boolean blank = isBlank(canon, n);
+        if (blank && r >= 0) {
+            // blank so far: the cell is blank and longer than digits
+            // unless another character follows
+            if (skip == null) {
+                skip = new char[1024];
+            }
+            boolean longer = false;
+            while (blank && (r = in.read(skip, 0, skip.length)) >= 0) {
+                longer |= r > 0;
+                blank = isBlank(skip, r);
+            }
+            if (blank) {
+                n = (longer) ? digits - 1 : 0;
+            }
+        } else if (blank) {
+            n = 0;
         }
+        return finish(n, no);
+    }
 
-        return tmp;
+    /**
+     * @param str CharSequence
+     * @return boolean whether every character of str is blank,
+     * as for str.toString().trim().equals("")
+     */
+    public static boolean isBlank(CharSequence str) {
+        int ln = str.length();
+        for (int k = 0; k < ln; ++k) {
+            if (str.charAt(k) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param c char array
+     * @param n number of characters to check
+     * @return boolean whether the first n characters of c are blank
+     */
+    private static boolean isBlank(char[] c, int n) {
+        for (int k = 0; k < n; ++k) {
+            if (c[k] > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the first n characters of str to the buffer, followed by
+     * the end of line and the optional null byte
+     *
+     * @param str CharSequence
+     * @param n number of characters to keep
+     * @param no boolean whether to append null byte ('\0')
+     * @return CharBuffer with the characters written
+     */
+    private CharBuffer write(CharSequence str, int n, boolean no) {
+        ensure(n);
+        if (str instanceof String) {
+            ((String) str).getChars(0, n, canon, 0);
+        } else {
+            for (int k = 0; k < n; ++k) {
+                canon[k] = str.charAt(k);
+            }
+        }
+        return finish(n, no);
+    }
+
+    /**
+     * @param n number of characters the buffer must hold before
+     * the end of line and the null byte
+     */
+    private void ensure(int n) {
+        if (canon.length < n + 2) {
+            canon = new char[Math.max(n + 2, DEF_CDGTS + 2)];
+            view = CharBuffer.wrap(canon);
+        }
+    }
 
+    /**
+     * Appends the end of line and the optional null byte to the first
+     * n characters of the buffer
+     *
+     * @param n number of characters kept
+     * @param no boolean whether to append null byte ('\0')
+     * @return CharBuffer with the characters written
+     */
+    private CharBuffer finish(int n, boolean no) {
+        canon[n++] = creturn;
+        if (no) {
+            canon[n++] = zeroscape;
+        }
+        view.clear();
+        view.limit(n);
+        return view;
     }
 
     /**
@@ -119,12 +267,7 @@ public class RoundString implements UnfCons {
      */
     public String Genround(byte[] bb, int digits) {
         byte[] str = bb;
-        String fmtu = "" + percntg + dot + digits + s;
-        String fmt = "%." + digits + "s";
-        if (!fmtu.equalsIgnoreCase(fmt) && loc == new Locale("en", "US")) {
-            mLog.severe("RoundString: Unicode & format strings do not agree");
-        }
-        String tmp = String.format(loc, fmtu, str).trim();
+        String tmp = String.format(loc, "%." + digits + "s", str).trim();
         tmp += creturn;
         if (nullbyte) {
             tmp += zeroscape;
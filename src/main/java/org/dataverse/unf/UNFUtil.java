@@ -19,10 +19,10 @@ package org.dataverse.unf;
 import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.TimeZone;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -39,15 +39,24 @@ public class UNFUtil {
      */
     public static String calculateUNF(final double[] numb)
             throws NumberFormatException, UnfException, IOException {
+        return calculateUNF(numb, 0, numb.length);
+    }
 
-        Double mat[][] = new Double[1][numb.length];
-        for (int n = 0; n < numb.length; ++n) {
-            mat[0][n] = numb[n];
-        }
-        UnfDigest.setTrnps(false);
-        String[] res = UnfDigest.unf(mat);
-
-        return res[0];
+    /**
+     * Overloaded method
+     * Obtains the unf of a slice of a one dimensional array of double,
+     * reading the values in place
+     *
+     * @param numb one dimensional array of double
+     * @param offset index of the first value
+     * @param length number of values
+     * @return String with unf calculation
+     * @throws NumberFormatException
+     * @throws IOException
+     */
+    public static String calculateUNF(final double[] numb, final int offset, final int length)
+            throws NumberFormatException, UnfException, IOException {
+        return UnfDigest.getEngine().unfResult(numb, offset, length).getUnf();
     }
 
 
@@ -68,6 +77,20 @@ public class UNFUtil {
         return res;
     }
 
+    /**
+     * Overloaded method that calculates the unf of the same column
+     * at several numbers of significant digits, in one pass
+     * @param numb one dimensional array of double
+     * @param ndigits array of integer significant digits, e.g. {5, 7, 9, 15}
+     * @return array of String with the unf for each element of ndigits
+     * @throws NumberFormatException
+     * @throws IOException
+     */
+    public static String[] calculateUNF(final double[] numb, final int[] ndigits)
+            throws NumberFormatException, UnfException, IOException {
+        return UnfDigest.getEngine().unf(numb, 0, numb.length, ndigits);
+    }
+
     /**
      * Overloaded method
      * @param numb one dimensional array of short
@@ -77,17 +100,8 @@ public class UNFUtil {
      */
     public static String calculateUNF(final short[] numb)
             throws NumberFormatException, UnfException, IOException {
-        double[] toret = new double[numb.length];
-        for (int k = 0; k < numb.length; ++k) {
-           if (numb[k] == Short.MAX_VALUE){
-                toret[k] = Double.NaN;
-            } else {
-                toret[k] = (double) numb[k];
-           }
-        }
-        String res = calculateUNF(toret);
-        return res;
-
+        // Short.MAX_VALUE is taken as missing and digested as NaN
+        return UnfDigest.getEngine().unfResult(numb, 0, numb.length).getUnf();
     }
 
     /**
@@ -99,17 +113,8 @@ public class UNFUtil {
      */
     public static String calculateUNF(final byte[] numb)
             throws NumberFormatException, UnfException, IOException {
-        double[] toret = new double[numb.length];
-        for (int k = 0; k < numb.length; ++k) {
-           if (numb[k] == Byte.MAX_VALUE){
-                toret[k] = Double.NaN;
-            } else {
-                toret[k] = (double) numb[k];
-           }
-        }
-        String res = calculateUNF(toret);
-        return res;
-
+        // Byte.MAX_VALUE is taken as missing and digested as NaN
+        return UnfDigest.getEngine().unfResult(numb, 0, numb.length).getUnf();
     }
 
     /**
@@ -121,17 +126,8 @@ public class UNFUtil {
      */
     public static String calculateUNF(final long[] numb)
             throws NumberFormatException, UnfException, IOException {
-
-        double[] toret = new double[numb.length];
-        for (int k = 0; k < numb.length; ++k) {
-           if (numb[k] == Long.MAX_VALUE){
-                toret[k] = Double.NaN;
-            } else {
-                toret[k] = (double) numb[k];
-           }
-        }
-        String res = calculateUNF(toret);
-        return res;
+        // Long.MAX_VALUE is taken as missing and digested as NaN
+        return UnfDigest.getEngine().unfResult(numb, 0, numb.length).getUnf();
     }
 
     /**
@@ -143,17 +139,8 @@ public class UNFUtil {
      */
     public static String calculateUNF(final int[] numb)
             throws NumberFormatException, UnfException, IOException {
-
-        double[] toret = new double[numb.length];
-        for (int k = 0; k < numb.length; ++k) {
-           if (numb[k] == Integer.MAX_VALUE){
-                toret[k] = Double.NaN;
-            } else {
-                toret[k] = (double) numb[k];
-           }
-        }
-        String res = calculateUNF(toret);
-        return res;
+        // Integer.MAX_VALUE is taken as missing and digested as NaN
+        return UnfDigest.getEngine().unfResult(numb, 0, numb.length).getUnf();
     }
 
     /**
@@ -165,13 +152,7 @@ public class UNFUtil {
      */
     public static String calculateUNF(final boolean[] numb)
             throws NumberFormatException, IOException {
-
-        Boolean[] toret = new Boolean[numb.length];
-        for (int k = 0; k < numb.length; ++k) {
-            toret[k] = Boolean.valueOf(numb[k]);
-        }
-        String[] res = UnfDigest.unf(toret);
-        return res[0];
+        return UnfDigest.getEngine().unfResult(numb, 0, numb.length).getUnf();
     }
 
     /**
@@ -211,21 +192,28 @@ public class UNFUtil {
         if (chr[0] != null) {
             String spres[] = chr[0].split(tosplit);
             if (spres.length >= 3 && chr[0].startsWith("UNF:")) {
-                return UnfDigest.addUNFs(chr);
+                return UnfDigest.getEngine().addUNFs(chr);
             }
             if (spres.length > 1) {
                 //throw new UnfException("UNFUtil: Malformed unf");
             }
         }
-        CharSequence[][] chseq = new CharSequence[1][chr.length];
-        UnfDigest.setTrnps(false);
-        int cnt = 0;
-        for (String str : chr) {
-            chseq[0][cnt] = (CharSequence) str;
-            cnt++;
-        }
-        String[] res = UnfDigest.unf(chseq);
-        return res[0];
+        return UnfDigest.getEngine().unfResult(chr).getUnf();
+    }
+
+    /**
+     * Overloaded method for a column of UTF-8 encoded strings as bytes;
+     * the unf is the same as for the array of the decoded Strings
+     * @param data byte array with the cells one after the other
+     * @param offsets integer array with the start of every cell and,
+     * as last element, the end of the last cell
+     * @param miss array of booleans for missing values, or null
+     * @return String with unf calculation
+     * @throws IOException
+     */
+    public static String calculateUNF(final byte[] data, final int[] offsets, final boolean[] miss)
+            throws IOException, UnfException {
+        return UnfDigest.getEngine().unfResult(data, offsets, miss).getUnf();
     }
 
      public static String calculateUNF(final String[] chr, final String[] sdfFormat)
@@ -234,15 +222,14 @@ public class UNFUtil {
          if (chr[0] != null) {
              String spres[] = chr[0].split(tosplit);
              if (spres.length >= 3 && chr[0].startsWith("UNF:")) {
-                 return UnfDigest.addUNFs(chr);
+                 return UnfDigest.getEngine().addUNFs(chr);
              }
 
              if (spres.length > 1) {
                  //throw new UnfException("UNFUtil: Malformed unf");
              }
          }
-        CharSequence[][] chseq = new CharSequence[1][chr.length];
-        UnfDigest.setTrnps(false);
+        CharSequence[] chseq = new CharSequence[chr.length];
         int cnt = 0;
         for (String str : chr) {
             if (sdfFormat[cnt] != null) {
@@ -269,11 +256,10 @@ public class UNFUtil {
                     Logger.getLogger(UNFUtil.class.getName()).log(Level.SEVERE, null, ex);
                 }
             }
-            chseq[0][cnt] = (CharSequence) str;
+            chseq[cnt] = (CharSequence) str;
             cnt++;
         }
-        String[] res = UnfDigest.unf(chseq);
-        return res[0];
+        return UnfDigest.getEngine().unfResult(chseq).getUnf();
     }
 
       public static String calculateUNF(final String[] beginDate, final String[] sdfFormat, final String[] endDate)
@@ -282,15 +268,14 @@ public class UNFUtil {
          if (beginDate[0] != null) {
              String spres[] = beginDate[0].split(tosplit);
              if (spres.length >= 3 && beginDate[0].startsWith("UNF:")) {
-                 return UnfDigest.addUNFs(beginDate);
+                 return UnfDigest.getEngine().addUNFs(beginDate);
              }
 
              if (spres.length > 1) {
                  //throw new UnfException("UNFUtil: Malformed unf");
              }
          }
-        CharSequence[][] chseq = new CharSequence[1][beginDate.length];
-        UnfDigest.setTrnps(false);
+        CharSequence[] chseq = new CharSequence[beginDate.length];
         int cnt = 0;
         for (String str : beginDate) {
             if (sdfFormat[cnt] != null) {
@@ -332,11 +317,10 @@ public class UNFUtil {
                     Logger.getLogger(UNFUtil.class.getName()).log(Level.SEVERE, null, ex);
                 }
             }
-            chseq[0][cnt] = (CharSequence) str;
+            chseq[cnt] = (CharSequence) str;
             cnt++;
         }
-        String[] res = UnfDigest.unf(chseq);
-        return res[0];
+        return UnfDigest.getEngine().unfResult(chseq).getUnf();
     }
 
   /**
@@ -347,24 +331,28 @@ public class UNFUtil {
      * combine with the String unfs.
      *
      * @param numb double bi-dimensional array
-     * to obtain unf along columns second index
+     * to obtain unf along columns second index: numb[r] is one column
      * @return String unf for data set
      * @throws NumberFormatException
      * @throws IOException
      */
     public static String calculateUNF(final double[][] numb)
             throws NumberFormatException, UnfException, IOException {
-        int ncol = numb[0].length;
-        List<double[]> lst = Arrays.asList(numb);
-        int nrw = lst.size();
-        Number[][] pass = new Number[nrw][ncol];
-        for (int r = 0; r < nrw; ++r) {
-            for (int c = 0; c < ncol; ++c) {
-                pass[r][c] = numb[r][c];
-            }
-        }
-        String[] unfs = UnfDigest.unf(pass);
-        return calculateUNF(unfs);
+        return UnfDigest.getEngine().unf(dataset(numb));
+    }
+
+    /**
+     * Overloaded method that calculates the unf's of the columns
+     * in parallel; the result is the same as calculateUNF(numb)
+     *
+     * @param numb double bi-dimensional array: numb[r] is one column
+     * @param executor Executor for the columns, e.g. a ForkJoinPool
+     * @return String unf for data set
+     * @throws IOException
+     */
+    public static String calculateUNF(final double[][] numb, final Executor executor)
+            throws UnfException, IOException {
+        return UnfDigest.getEngine().unf(dataset(numb), executor);
     }
 
     /**
@@ -375,41 +363,81 @@ public class UNFUtil {
      * combine with the numeric unfs.
      *
      * @param str String bi-dimensional array
-     * to obtain unf along columns second index
+     * to obtain unf along columns second index: str[r] is one column
      * @return String unf for data set
      * @throws NumberFormatException
      * @throws IOException
      */
     public static String calculateUNF(final String[][] str)
             throws NumberFormatException, UnfException, IOException {
-        int ncol = str[0].length;
-        List<String[]> lst = Arrays.asList(str);
-        int nrw = lst.size();
-        CharSequence[][] pass = new CharSequence[nrw][ncol];
-        for (int r = 0; r < nrw; ++r) {
-            for (int c = 0; c < ncol; ++c) {
-                pass[r][c] = str[r][c];
-            }
+        return UnfDigest.getEngine().unf(dataset(str));
+    }
+
+    /**
+     * Overloaded method that calculates the unf's of the columns
+     * in parallel; the result is the same as calculateUNF(str)
+     *
+     * @param str String bi-dimensional array: str[r] is one column
+     * @param executor Executor for the columns, e.g. a ForkJoinPool
+     * @return String unf for data set
+     * @throws IOException
+     */
+    public static String calculateUNF(final String[][] str, final Executor executor)
+            throws UnfException, IOException {
+        return UnfDigest.getEngine().unf(dataset(str), executor);
+    }
+
+    /**
+     * Calculates the unf of a data set with columns of any type,
+     * the columns in parallel
+     *
+     * @param data UnfDataset with the columns
+     * @param executor Executor for the columns, e.g. a ForkJoinPool
+     * @return String unf for data set
+     * @throws IOException
+     */
+    public static String calculateUNF(final UnfDataset data, final Executor executor)
+            throws UnfException, IOException {
+        return UnfDigest.getEngine().unf(data, executor);
+    }
+
+    /**
+     * @param numb double bi-dimensional array: numb[r] is one column
+     * @return UnfDataset with the columns
+     */
+    private static UnfDataset dataset(final double[][] numb) {
+        UnfDataset data = new UnfDataset();
+        for (double[] column : numb) {
+            data.add(column);
         }
-        String[] unfs = UnfDigest.unf(pass);
-        return calculateUNF(unfs);
+        return data;
     }
 
-    public static String calculateUNF(final Number[] numb) throws IOException, UnfException {
-        Double mat[][] = new Double[1][numb.length];
-        for (int n = 0; n < numb.length; ++n) {
-            mat[0][n] = numb[n] != null ? Double.valueOf(numb[n].doubleValue()) : null;
+    /**
+     * @param str String bi-dimensional array: str[r] is one column
+     * @return UnfDataset with the columns
+     */
+    private static UnfDataset dataset(final String[][] str) {
+        UnfDataset data = new UnfDataset();
+        for (String[] column : str) {
+            data.add(column);
         }
-        UnfDigest.setTrnps(false);
-        String[] res = UnfDigest.unf(mat);
+        return data;
+    }
 
-        return res[0];
+    /**
+     * Overloaded method; BigDecimal and BigInteger elements are
+     * rounded with all their digits, other elements through their
+     * double value
+     * @param numb one dimensional array of Number, null for missing values
+     * @return String with unf calculation
+     * @throws IOException
+     */
+    public static String calculateUNF(final Number[] numb) throws IOException, UnfException {
+        return UnfDigest.getEngine().unfResult(numb, 0, numb.length).getUnf();
     }
 
     public static String calculateUNF(final BitString[] numb) throws IOException {
-        UnfDigest.setTrnps(false);
-        String[] res = UnfDigest.unf(numb);
-
-        return res[0];
+        return UnfDigest.getEngine().unfResult(numb).getUnf();
     }
 }
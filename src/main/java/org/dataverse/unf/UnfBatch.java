@@ -0,0 +1,202 @@
+// Copyright 2023 Dataverse Core Team <support@dataverse.org>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// SPDX-License-Identifier: Apache-2.0
+
+/**
+ * Description: Calculates the unf's of many files with one UnfEngine.
+ *              Every file is read on a thread of its own, a virtual
+ *              thread when the Java runtime has them, so waiting for
+ *              storage costs no platform thread; the columns of the
+ *              files are then calculated on a bounded pool of platform
+ *              threads, one per processor by default.
+ *
+ *              At most maxOpen files are read or calculated at the
+ *              same time, which bounds the memory held by the columns.
+ *              The library is built for Java 17, which has no virtual
+ *              threads; they are looked up by reflection and used when
+ *              the runtime is Java 21 or later. Without them, the files
+ *              are read on a fixed pool of
+ *              IO_THREADS_PER_CPU platform threads per calculating
+ *              thread, at most maxOpen, and the pool alone bounds the
+ *              open files.
+ *
+ * Usage:  try (UnfBatch batch = new UnfBatch(engine)) {
+ *             List<String> unfs = batch.unf(sources);
+ *         }
+ */
+package org.dataverse.unf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+public class UnfBatch implements AutoCloseable {
+
+    private static Logger mLog = Logger.getLogger(UnfBatch.class.getName());
+    /** default number of files read or calculated at the same time */
+    static final int DEF_MAX_OPEN = 256;
+    /** platform threads reading files per calculating thread */
+    static final int IO_THREADS_PER_CPU = 4;
+
+    /** the engine that calculates the unf's */
+    private final UnfEngine engine;
+    /** one thread per file, to read it */
+    private final ExecutorService io;
+    /** whether io runs virtual threads */
+    private final boolean virtual;
+    /** bounded pool to calculate the columns */
+    private final ForkJoinPool cpu;
+    /** permits for the files read or calculated at the same time,
+     * null when the pool of io bounds them */
+    private final Semaphore open;
+
+    /**
+     * A file to read as a data set
+     */
+    public interface Source {
+
+        /**
+         * @return UnfDataset with the columns of the file
+         * @throws IOException
+         */
+        UnfDataset read() throws IOException, UnfException;
+    }
+
+    /**
+     * Constructor with one calculating thread per processor
+     *
+     * @param engine UnfEngine that calculates the unf's
+     */
+    public UnfBatch(UnfEngine engine) {
+        this(engine, Runtime.getRuntime().availableProcessors(), DEF_MAX_OPEN);
+    }
+
+    /**
+     * @param engine UnfEngine that calculates the unf's
+     * @param threads integer number of platform threads that calculate
+     * @param maxOpen integer maximum number of files read or calculated
+     * at the same time
+     */
+    public UnfBatch(UnfEngine engine, int threads, int maxOpen) {
+        if (threads <= 0 || maxOpen <= 0) {
+            throw new IllegalArgumentException("threads and maxOpen must be positive");
+        }
+        this.engine = engine;
+        this.cpu = new ForkJoinPool(threads);
+        ExecutorService virtuals = virtualThreadPerTaskExecutor();
+        this.virtual = virtuals != null;
+        if (virtual) {
+            this.io = virtuals;
+            this.open = new Semaphore(maxOpen);
+        } else {
+            long platforms = Math.min((long) maxOpen, (long) IO_THREADS_PER_CPU * threads);
+            this.io = Executors.newFixedThreadPool((int) platforms);
+            this.open = null;
+        }
+    }
+
+    /**
+     * @return boolean whether every file is read on a virtual thread
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Reads a file and calculates its unf, without waiting
+     *
+     * @param source Source of the file
+     * @return CompletableFuture with the unf of the file
+     */
+    public CompletableFuture<String> submit(final Source source) {
+        return CompletableFuture.supplyAsync(() -> {
+            if (open != null) {
+                try {
+                    open.acquire();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new CompletionException(ex);
+                }
+            }
+            try {
+                return engine.unf(source.read(), cpu);
+            } catch (IOException | UnfException ex) {
+                throw new CompletionException(ex);
+            } finally {
+                if (open != null) {
+                    open.release();
+                }
+            }
+        }, io);
+    }
+
+    /**
+     * Reads the files and calculates their unf's; if a file fails,
+     * the files not started yet are cancelled and its exception is thrown
+     *
+     * @param sources List of the files
+     * @return List of String with the unf of every file, in order
+     * @throws IOException
+     */
+    public List<String> unf(List<? extends Source> sources) throws IOException, UnfException {
+        List<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>();
+        for (Source source : sources) {
+            futures.add(submit(source));
+        }
+        List<String> res = new ArrayList<String>();
+        try {
+            for (CompletableFuture<String> future : futures) {
+                res.add(UnfEngine.join(future));
+            }
+        } finally {
+            for (CompletableFuture<String> future : futures) {
+                future.cancel(false);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Stops the threads once the submitted files are done
+     */
+    @Override
+    public void close() {
+        io.shutdown();
+        cpu.shutdown();
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor of Java 21, called by
+     * reflection since the library is built for Java 17
+     *
+     * @return ExecutorService with a virtual thread per task, or null
+     */
+    private static ExecutorService virtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            mLog.fine("UnfBatch: no virtual threads, reading on platform threads");
+            return null;
+        }
+    }
+}
@@ -44,6 +44,13 @@ import java.util.logging.Logger;
 public class UnfBitfield<T extends CharSequence> implements UnfCons {
 
     private static Logger mLog = Logger.getLogger(UnfBitfield.class.getName());
+
+    static {
+        if (!DEBUG) {
+            mLog.setLevel(Level.WARNING);
+        }
+    }
+
     /** the staring encoding */
     private String orencoding = null;
     /** the final encoding */
@@ -53,20 +60,23 @@ public class UnfBitfield<T extends CharSequence> implements UnfCons {
     /** the MessageDigest algorithm **/
     private String mdalgor = "SHA-256";//mdalgorithm;
     private MessageDigest md = null;
+    /** number of bits of the digest kept */
+    private int hsize = DEF_HSZ;
+    /** the whole digest of the last column */
+    private byte[] hash = null;
+    /** sink of the bytes fed to md, or null */
+    private final UnfTraceSink trace = UnfDigest.getTraceSink();
 
     /**
      * Constructor
      */
     public UnfBitfield() {
-        if (!DEBUG) {
-            mLog.setLevel(Level.WARNING);
-        }
         if (orencoding == null) {
             orencoding = textencoding;
         }
         try {
             //md5_init in Micah code
-            md = MessageDigest.getInstance(mdalgor);
+            md = new DigestBuffer(UnfDigestUtils.newDigest(mdalgor), trace, "UnfBitfield");
         } catch (NoSuchAlgorithmException err) {
             throw new RuntimeException(err.getMessage());
         }
@@ -79,13 +89,13 @@ public class UnfBitfield<T extends CharSequence> implements UnfCons {
      * @exception NoSuchAlgorithmException
      */
     public UnfBitfield(String algor) {
-        if (!DEBUG) {
-            mLog.setLevel(Level.WARNING);
+        if (orencoding == null) {
+            orencoding = textencoding;
         }
         mdalgor = algor;
         try {
             //another algor different form md5
-            md = MessageDigest.getInstance(algor);
+            md = new DigestBuffer(UnfDigestUtils.newDigest(algor), trace, "UnfBitfield");
         } catch (NoSuchAlgorithmException err) {
             throw new RuntimeException(err.getMessage());
         }
@@ -148,7 +158,7 @@ public class UnfBitfield<T extends CharSequence> implements UnfCons {
         MessageDigest mdm = null;
         try {
             //another algor different form md5
-            mdm = MessageDigest.getInstance(aa);
+            mdm = new DigestBuffer(UnfDigestUtils.newDigest(aa), trace, "UnfBitfield");
             this.md = mdm;
         } catch (NoSuchAlgorithmException err) {
             throw new RuntimeException(err.getMessage());
@@ -164,6 +174,29 @@ public class UnfBitfield<T extends CharSequence> implements UnfCons {
         return nullbyte;
     }
 
+    /**
+     * @return integer with the number of bits of the digest kept
+     */
+    public int getHsize() {
+        return hsize;
+    }
+
+    /**
+     * @param hsz integer number of bits of the digest to keep,
+     * one of UnfCons.HSZ_VALUES
+     */
+    public void setHsize(int hsz) {
+        hsize = UnfDigestUtils.checkHsize(hsz);
+    }
+
+    /**
+     * @return byte array with the whole digest of the last
+     * column, before truncation, or null
+     */
+    public byte[] getHash() {
+        return (hash == null) ? null : hash.clone();
+    }
+
     /**
      * Feeds the elements of v to MessageDigest and updates it
      *
@@ -179,12 +212,9 @@ public class UnfBitfield<T extends CharSequence> implements UnfCons {
             throws UnsupportedEncodingException {
 
         int nv = v.length;
-
-        int [] v5bitsize = {128, 192, 256}; // TODO: is it supposed to be 192 rather than 196?
         int k = 0;
         for (k = 0; k < nv; ++k) {
             //md5_append is called with UNF3
-            mLog.finer("" + v[k] + ";");
             boolean m;
             if (miss == null) {
                 md = UNF3(v[k],  md, false);
@@ -193,14 +223,14 @@ public class UnfBitfield<T extends CharSequence> implements UnfCons {
             }
         }
         /**SHA256 produces, by default, 32 byte digest**/
-        byte[] hash = md.digest();
+        hash = md.digest();
         md.reset();
         if (hash.length > 32) {
             mLog.finer("unfString: hash has more than 32 bytes.." + hash.length);
         }
 
-        // most significant 128 bits are used by dvn in UNFv5
-        byte[] v5hash = truncateHash(hash,v5bitsize[0]);
+        // most significant hsize bits, 128 by default as used by dvn in UNFv5
+        byte[] v5hash = UnfDigestUtils.truncateHash(hash, hsize);
         for (k = 0; k < v5hash.length; ++k) {
             result.add(v5hash[k] & 0xFF);
         }
@@ -214,16 +244,6 @@ public class UnfBitfield<T extends CharSequence> implements UnfCons {
         return rtobase64;
     }
 
-    byte[] truncateHash(byte[] hash,int n){
-        //TODO: are all the truncation values on byte boundaries
-        assert n%8 == 0;
-        int bits = n/8;
-        byte[] rhash = new byte[bits];
-        for (int x=0;x<bits;x++){
-            rhash[x] = hash[x];
-        }
-        return rhash;
-    }
 
     /**
      * Updates the MessageDigest previous with the bytes in obj
@@ -239,7 +259,6 @@ public class UnfBitfield<T extends CharSequence> implements UnfCons {
             MessageDigest previous, boolean miss)
             throws UnsupportedEncodingException {
         if (!miss) {
-            mLog.finer(obj.toString());
             String res = "";
             if (!obj.equals("")) {
                 res = (String) obj.toString();
@@ -275,23 +294,12 @@ public class UnfBitfield<T extends CharSequence> implements UnfCons {
             if (nullbyte) {
                 bint = UnfDigestUtils.eliminateZeroPadding(tmpu, bt);
             }
-            String tmp0 = "";
-            int cnt = 0;
-            for (int n = 0; n < bint.length; ++n) {
-                tmp0 = tmp0 + "\t" + bint[n];
-                cnt++;
-                if (cnt % 10 == 0) {
-                    tmp0 += "\n";
-                }
-            }
-            mLog.finer("after " + tmp0);
             //md5_append in Micah code
             md.update(bint);
         }
 
         if (miss) {
-            byte[] topass = UtilsConverter.getBytes(missv, null);
-            md.update(topass);
+            md.update(UnfTokens.MISSING);
         }
 
         return previous;
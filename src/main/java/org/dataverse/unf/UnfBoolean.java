@@ -48,6 +48,13 @@ import java.util.logging.Logger;
 public class UnfBoolean<T extends Number> implements UnfCons {
 
     private static Logger mLog = Logger.getLogger(UnfBoolean.class.getName());
+
+    static {
+        if (!DEBUG) {
+            mLog.setLevel(Level.WARNING);
+        }
+    }
+
     /** the starting encoding */
     private String orencoding = null;
     /** the final encoding */
@@ -59,20 +66,26 @@ public class UnfBoolean<T extends Number> implements UnfCons {
     /** the MessageDigest algorithm **/
     private String mdalgor = "SHA-256";
     private MessageDigest md = null;
+    /** number of bits of the digest kept */
+    private int hsize = DEF_HSZ;
+    /** the whole digest of the last column */
+    private byte[] hash = null;
+    /** sink of the bytes fed to md, or null */
+    private final UnfTraceSink trace = UnfDigest.getTraceSink();
+    /** bytes of true and false, null until encoded */
+    private byte[] one = null;
+    private byte[] zero = null;
 
     /**
      * Constructor
      */
     public UnfBoolean() {
-        if (!DEBUG) {
-            mLog.setLevel(Level.WARNING);
-        }
         if (orencoding == null) {
             orencoding = textencoding;
         }
         try {
             //md5_init in Micah code
-            md = MessageDigest.getInstance(mdalgor);
+            md = new DigestBuffer(UnfDigestUtils.newDigest(mdalgor), trace, "UnfBoolean");
         } catch (NoSuchAlgorithmException err) {
             throw new RuntimeException(err.getMessage());
         }
@@ -85,13 +98,13 @@ public class UnfBoolean<T extends Number> implements UnfCons {
      * @exception NoSuchAlgorithmException
      */
     public UnfBoolean(String algor) {
-        if (!DEBUG) {
-            mLog.setLevel(Level.WARNING);
+        if (orencoding == null) {
+            orencoding = textencoding;
         }
         mdalgor = algor;
         try {
             //another algor different form md5
-            md = MessageDigest.getInstance(algor);
+            md = new DigestBuffer(UnfDigestUtils.newDigest(algor), trace, "UnfBoolean");
         } catch (NoSuchAlgorithmException err) {
             throw new RuntimeException(err.getMessage());
         }
@@ -135,6 +148,8 @@ public class UnfBoolean<T extends Number> implements UnfCons {
      */
     public void setEncoding(String fenc) {
         encoding = fenc;
+        one = null;
+        zero = null;
     }
 
     /**
@@ -153,7 +168,7 @@ public class UnfBoolean<T extends Number> implements UnfCons {
         MessageDigest mdm = null;
         try {
             //another algor different form md5
-            mdm = MessageDigest.getInstance(aa);
+            mdm = new DigestBuffer(UnfDigestUtils.newDigest(aa), trace, "UnfBoolean");
             this.md = mdm;
         } catch (NoSuchAlgorithmException err) {
             throw new RuntimeException(err.getMessage());
@@ -169,6 +184,29 @@ public class UnfBoolean<T extends Number> implements UnfCons {
         return nullbyte;
     }
 
+    /**
+     * @return integer with the number of bits of the digest kept
+     */
+    public int getHsize() {
+        return hsize;
+    }
+
+    /**
+     * @param hsz integer number of bits of the digest to keep,
+     * one of UnfCons.HSZ_VALUES
+     */
+    public void setHsize(int hsz) {
+        hsize = UnfDigestUtils.checkHsize(hsz);
+    }
+
+    /**
+     * @return byte array with the whole digest of the last
+     * column, before truncation, or null
+     */
+    public byte[] getHash() {
+        return (hash == null) ? null : hash.clone();
+    }
+
     /**
      *
      * @param x double
@@ -199,10 +237,8 @@ public class UnfBoolean<T extends Number> implements UnfCons {
     public String RUNF5(final Boolean[] v, List<Integer> result, Character[] base64, StringBuilder hex)//, String[] resultBase64)
             throws UnsupportedEncodingException, IOException {
         int nv = v.length;
-        double dub = 0;
         boolean miss = false;
         int k = 0;
-        int [] v5bitsize = {128, 192, 256}; // TODO: is it supposed to be 192 rather than 196?
 
         for (k = 0; k < nv; ++k) {
             miss = (v[k] == null);
@@ -210,12 +246,24 @@ public class UnfBoolean<T extends Number> implements UnfCons {
             //md5_append is called with UNF5
             md = UNF5(v[k], md, miss);
         }
+        return finish(result, base64, hex);
+    }
+
+    /**
+     * Completes the digest and encodes the most significant bytes
+     *
+     * @param result List of Integer to store the bytes of the digest
+     * @param base64 array to store the characters of the base64 encoding
+     * @param hex StringBuilder to store the hexadecimal representation
+     * @return String with base64 encoding
+     */
+    private String finish(List<Integer> result, Character[] base64, StringBuilder hex) {
         /**produces, by default, 16 byte digest: equivalent to md5_finish**/
-        byte[] hash = md.digest();
+        hash = md.digest();
         md.reset();
-        byte[] v5hash = truncateHash(hash,v5bitsize[0]);
+        byte[] v5hash = UnfDigestUtils.truncateHash(hash, hsize);
         byte[] inthash = new byte[v5hash.length];
-        for (k = 0; k < v5hash.length; ++k) {
+        for (int k = 0; k < v5hash.length; ++k) {
             int h = (int) ((v5hash[k] & 0xFF));
             inthash[k] = (byte) h;
             result.add((Integer) (h + 0));
@@ -240,15 +288,6 @@ public class UnfBoolean<T extends Number> implements UnfCons {
         return tobase64;
     }
 
-    //TODO: this was cut&pasted from UnfString refactoring need to be done
-    byte[] truncateHash(byte[] hash,int n){
-        int bits = n/8;
-        byte[] rhash = new byte[bits];
-        for (int x=0;x<bits;x++){
-            rhash[x] = hash[x];
-        }
-        return rhash;
-    }
 
     /**
      *  Feeds the bytes of a String to MessageDigest algorithm
@@ -264,59 +303,107 @@ public class UnfBoolean<T extends Number> implements UnfCons {
             throws UnsupportedEncodingException, IOException {
         if (!miss) {
 
-            String tmps = obj == true? "1":"0";
-
-            if (tmps == null) {
-                mLog.severe("UNF3: Genround returns null");
-                return previous;
-            } else {
-                mLog.finer("UNF3: Genround: " + tmps);
-            }
-            /** add the null byte */
-            int sz = tmps.length();
-            if (nullbyte && !(tmps.charAt(sz - 1) == zeroscape)) {
-                tmps += zeroscape;
+            byte[] bint = canonBytes(obj.booleanValue());
+            if (bint != null) {
+                previous.update(bint);
             }
-            String dec[] = new String[2];
-            dec[FINAL_ENC] = encoding;
-            dec[ORG_ENC] = (orencoding != null) ? orencoding : Charset.defaultCharset().name();
-            byte bt[] = null;
-            if (orencoding != null) {
-                bt = tmps.getBytes(orencoding);
-            } else {
-                bt = tmps.getBytes();
-            }
-            String tmp = "";
+        }
 
-            byte[] tmpu = null;
+        if (miss) {
+            previous.update(UnfTokens.MISSING);
+        }
 
+        return previous;
+    }
 
-            tmpu = UtilsConverter.byteConverter(bt, dec);
+    /**
+     * Feeds a slice of a primitive array of boolean to the MessageDigest.
+     * The bytes for true and false are encoded once, so each value
+     * costs one update; the result is the same as for the equivalent
+     * array of Boolean.
+     *
+     * @param v array of boolean
+     * @param off index of the first value
+     * @param len number of values
+     * @param result List of Integer to store the bytes of the digest
+     * @param base64 array to store the characters of the base64 encoding
+     * @param hex StringBuilder to store the hexadecimal representation
+     * @return String with base64 encoding
+     */
+    public String RUNF5(final boolean[] v, int off, int len, List<Integer> result,
+            Character[] base64, StringBuilder hex)
+            throws UnsupportedEncodingException, IOException {
+        byte[] t = canonBytes(true);
+        byte[] f = canonBytes(false);
+        int end = off + len;
+        for (int k = off; k < end; ++k) {
+            md.update(v[k] ? t : f);
+        }
+        return finish(result, base64, hex);
+    }
 
-            if (tmpu == null) {
-                mLog.severe("UNF3: CanonalizeUnicode returns null");
-                return previous;
+    /**
+     * The bytes of true and false are encoded once for the encodings;
+     * with ascii compatible encodings they are the shared tokens.
+     *
+     * @param b boolean value
+     * @return byte array to feed the MessageDigest
+     * @throws UnsupportedEncodingException
+     */
+    private byte[] canonBytes(boolean b)
+            throws UnsupportedEncodingException, IOException {
+        if (one == null) {
+            if (UnfDigestUtils.isAsciiCompatible(orencoding, encoding)) {
+                one = UnfTokens.TRUE;
+                zero = UnfTokens.FALSE;
+            } else {
+                one = canonBytes("1");
+                zero = canonBytes("0");
             }
+        }
+        return b ? one : zero;
+    }
 
-            byte[] bint = tmpu;
-            if (nullbyte) {
-                bint = UnfDigestUtils.eliminateZeroPadding(tmpu, bt);
-            }
-            String tmp0 = "";
-            for (int n = 0; n < bint.length; ++n) {
-                tmp0 = tmp0 + "\t" + bint[n];
-            }
-            mLog.finer("after " + tmp0);
-            previous.update(bint);
+    /**
+     * Encodes the canonical form of a boolean with the null byte
+     *
+     * @param tmps String "1" or "0"
+     * @return byte array to feed the MessageDigest
+     * @throws UnsupportedEncodingException
+     */
+    private byte[] canonBytes(String tmps)
+            throws UnsupportedEncodingException, IOException {
+        mLog.finer("UNF3: Genround: " + tmps);
+        /** add the null byte */
+        int sz = tmps.length();
+        if (nullbyte && !(tmps.charAt(sz - 1) == zeroscape)) {
+            tmps += zeroscape;
+        }
+        String dec[] = new String[2];
+        dec[FINAL_ENC] = encoding;
+        dec[ORG_ENC] = (orencoding != null) ? orencoding : Charset.defaultCharset().name();
+        byte bt[] = null;
+        if (orencoding != null) {
+            bt = tmps.getBytes(orencoding);
+        } else {
+            bt = tmps.getBytes();
         }
 
-        if (miss) {
-            byte[] tpu = UtilsConverter.getBytes(missv, null);
+        byte[] tmpu = null;
 
-            previous.update(tpu);
+
+        tmpu = UtilsConverter.byteConverter(bt, dec);
+
+        if (tmpu == null) {
+            mLog.severe("UNF3: CanonalizeUnicode returns null");
+            return null;
         }
 
-        return previous;
+        byte[] bint = tmpu;
+        if (nullbyte) {
+            bint = UnfDigestUtils.eliminateZeroPadding(tmpu, bt);
+        }
+        return bint;
     }
 }
    
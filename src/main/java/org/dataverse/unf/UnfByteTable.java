@@ -0,0 +1,122 @@
+// Copyright 2023 Dataverse Core Team <support@dataverse.org>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// SPDX-License-Identifier: Apache-2.0
+
+/**
+ * Description: Normalized byte sequences for a fixed set of values,
+ *              packed one after the other in a single byte array.
+ *              Entry k holds exactly the bytes that are fed to the
+ *              MessageDigest for the k-th value, null byte included,
+ *              so digesting a value is an array lookup and one update.
+ *
+ *              A dictionary-encoded column is a table with the entries
+ *              of its dictionary plus an array of codes, the indexes
+ *              of the entries, with negative codes for missing values.
+ *
+ *              A block of rows of a long column is a table with an
+ *              entry for each row; blocks can be normalized in parallel
+ *              and digested afterwards, in order.
+ *
+ *              Tables are immutable once built and can be shared
+ *              between threads.
+ */
+package org.dataverse.unf;
+
+import java.security.MessageDigest;
+
+public class UnfByteTable {
+
+    /** the bytes of all the entries */
+    private final byte[] data;
+    /** entry k is data[offsets[k]] up to data[offsets[k + 1]] */
+    private final int[] offsets;
+
+    /**
+     * Constructor
+     * @param data byte array with the entries one after the other
+     * @param offsets integer array with the start of every entry
+     * and, as last element, the end of the last entry
+     */
+    UnfByteTable(byte[] data, int[] offsets) {
+        this.data = data;
+        this.offsets = offsets;
+    }
+
+    /**
+     * @return integer with the number of entries
+     */
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * @param k integer index of entry
+     * @return number of bytes in entry k
+     */
+    public int length(int k) {
+        return offsets[k + 1] - offsets[k];
+    }
+
+    /**
+     * @param k integer index of entry
+     * @return copy of the bytes in entry k
+     */
+    public byte[] get(int k) {
+        byte[] res = new byte[length(k)];
+        System.arraycopy(data, offsets[k], res, 0, res.length);
+        return res;
+    }
+
+    /**
+     * Updates the MessageDigest with the bytes of entry k
+     *
+     * @param md MessageDigest
+     * @param k integer index of entry
+     */
+    public void update(MessageDigest md, int k) {
+        md.update(data, offsets[k], offsets[k + 1] - offsets[k]);
+    }
+
+    /**
+     * Updates the MessageDigest with all the entries, in order
+     *
+     * @param md MessageDigest
+     */
+    public void update(MessageDigest md) {
+        int n = size();
+        md.update(data, offsets[0], offsets[n] - offsets[0]);
+    }
+
+    /**
+     * Updates the MessageDigest with the entries of a slice of codes,
+     * in order; a negative code is a missing value
+     *
+     * @param md MessageDigest
+     * @param codes integer array with indexes of entries
+     * @param off index of the first code
+     * @param len number of codes
+     */
+    public void update(MessageDigest md, int[] codes, int off, int len) {
+        int end = off + len;
+        for (int k = off; k < end; ++k) {
+            int c = codes[k];
+            if (c < 0) {
+                md.update(UnfTokens.MISSING);
+            } else {
+                md.update(data, offsets[c], offsets[c + 1] - offsets[c]);
+            }
+        }
+    }
+}
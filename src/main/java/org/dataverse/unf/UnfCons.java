@@ -28,8 +28,22 @@ public interface UnfCons {
     /**number of characters approximation*/
     static int DEF_CDGTS = 128;
 
+    /**number of bits of the digest kept in the unf */
     static int DEF_HSZ = 128;
 
+    /**hash sizes: the digest is truncated to its most significant bits */
+    static int[] HSZ_VALUES = {128, 192, 256};
+
+    /**the MessageDigest algorithm of unf version 5 and 6 */
+    static String SHA256 = "SHA-256";
+
+    /**opt-in MessageDigest algorithm, faster on 64-bit machines;
+     * its unf's are not comparable with those of SHA-256 */
+    static String SHA512_256 = "SHA-512/256";
+
+    /**extension that marks unf's calculated with SHA-512/256 */
+    static String SHA512_256_EXT = "SHA512/256";
+
     /**bounds for min and max decimal digits and decimal point */
     static int[] NDGTS_BNDS = {1, 15};
 
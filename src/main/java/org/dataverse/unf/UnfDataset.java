@@ -0,0 +1,283 @@
+// Copyright 2023 Dataverse Core Team <support@dataverse.org>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// SPDX-License-Identifier: Apache-2.0
+
+/**
+ * Description: The columns of a data set, each one an array with the
+ *              values of one variable, for the unf of the whole data set.
+ *              The columns are independent until their unf's are
+ *              combined, so UnfEngine can calculate them in parallel.
+ *
+ *              The arrays are not copied: they must not be modified
+ *              until the unf is calculated.
+ *
+ *              The cost of a column is estimated from its type, its
+ *              length and, for characters, the lengths of a sample of
+ *              cells; the most expensive columns are started first.
+ *
+ * Usage:  UnfDataset data = new UnfDataset();
+ *         data.add(age).add(income).add(names);
+ *         String unf = engine.unf(data, executor);
+ */
+package org.dataverse.unf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class UnfDataset {
+
+    /** estimated cost of a boolean, the unit of the cost of a column */
+    static final int BOOLEAN_COST = 1;
+    /** estimated cost of an integral number */
+    static final int INTEGER_COST = 4;
+    /** estimated cost of a floating point number */
+    static final int NUMBER_COST = 16;
+    /** estimated cost of a character column, for each character */
+    static final int CHAR_COST = 1;
+    /** number of cells sampled to estimate the length of a character column */
+    static final int COST_SAMPLES = 64;
+
+    /** the columns in the order they were added */
+    private final List<Column> columns = new ArrayList<Column>();
+
+    /**
+     * @param column array of double, NaN for missing values
+     * @return this UnfDataset
+     */
+    public UnfDataset add(final double[] column) {
+        return add(new Column() {
+            @Override
+            UnfResult unfResult(UnfEngine engine) throws IOException, UnfException {
+                return engine.unfResult(column, 0, column.length);
+            }
+
+            @Override
+            long cost(UnfEngine engine) {
+                return (long) column.length * NUMBER_COST;
+            }
+        });
+    }
+
+    /**
+     * @param column array of long, Long.MAX_VALUE for missing values
+     * @return this UnfDataset
+     */
+    public UnfDataset add(final long[] column) {
+        return add(new Column() {
+            @Override
+            UnfResult unfResult(UnfEngine engine) throws IOException, UnfException {
+                return engine.unfResult(column, 0, column.length);
+            }
+
+            @Override
+            long cost(UnfEngine engine) {
+                return (long) column.length * INTEGER_COST;
+            }
+        });
+    }
+
+    /**
+     * @param column array of int, Integer.MAX_VALUE for missing values
+     * @return this UnfDataset
+     */
+    public UnfDataset add(final int[] column) {
+        return add(new Column() {
+            @Override
+            UnfResult unfResult(UnfEngine engine) throws IOException, UnfException {
+                return engine.unfResult(column, 0, column.length);
+            }
+
+            @Override
+            long cost(UnfEngine engine) {
+                return (long) column.length * INTEGER_COST;
+            }
+        });
+    }
+
+    /**
+     * @param column array of short, Short.MAX_VALUE for missing values
+     * @return this UnfDataset
+     */
+    public UnfDataset add(final short[] column) {
+        return add(new Column() {
+            @Override
+            UnfResult unfResult(UnfEngine engine) throws IOException, UnfException {
+                return engine.unfResult(column, 0, column.length);
+            }
+
+            @Override
+            long cost(UnfEngine engine) {
+                return (long) column.length * INTEGER_COST;
+            }
+        });
+    }
+
+    /**
+     * @param column array of byte, Byte.MAX_VALUE for missing values
+     * @return this UnfDataset
+     */
+    public UnfDataset add(final byte[] column) {
+        return add(new Column() {
+            @Override
+            UnfResult unfResult(UnfEngine engine) throws IOException, UnfException {
+                return engine.unfResult(column, 0, column.length);
+            }
+
+            @Override
+            long cost(UnfEngine engine) {
+                return (long) column.length * INTEGER_COST;
+            }
+        });
+    }
+
+    /**
+     * @param column array of boolean
+     * @return this UnfDataset
+     */
+    public UnfDataset add(final boolean[] column) {
+        return add(new Column() {
+            @Override
+            UnfResult unfResult(UnfEngine engine) throws IOException {
+                return engine.unfResult(column, 0, column.length);
+            }
+
+            @Override
+            long cost(UnfEngine engine) {
+                return (long) column.length * BOOLEAN_COST;
+            }
+        });
+    }
+
+    /**
+     * @param <T> Generic type that extends Number
+     * @param column array of generic class T, null for missing values
+     * @return this UnfDataset
+     */
+    public <T extends Number> UnfDataset add(final T[] column) {
+        return add(new Column() {
+            @Override
+            UnfResult unfResult(UnfEngine engine) throws IOException, UnfException {
+                return engine.unfResult(column, 0, column.length);
+            }
+
+            @Override
+            long cost(UnfEngine engine) {
+                return (long) column.length * NUMBER_COST;
+            }
+        });
+    }
+
+    /**
+     * @param <T> Generic type that extends CharSequence
+     * @param column array of generic class T, null for missing values
+     * @return this UnfDataset
+     */
+    public <T extends CharSequence> UnfDataset add(final T[] column) {
+        return add(new Column() {
+            @Override
+            UnfResult unfResult(UnfEngine engine) throws IOException, UnfException {
+                return engine.unfResult(column);
+            }
+
+            @Override
+            long cost(UnfEngine engine) {
+                return (long) column.length * charCost(column, engine.getCdigits());
+            }
+        });
+    }
+
+    /**
+     * @param column array of BitString, null for missing values
+     * @return this UnfDataset
+     */
+    public UnfDataset add(final BitString[] column) {
+        return add(new Column() {
+            @Override
+            UnfResult unfResult(UnfEngine engine) throws IOException {
+                return engine.unfResult(column);
+            }
+
+            @Override
+            long cost(UnfEngine engine) {
+                return (long) column.length * charCost(column, UnfCons.DEF_CDGTS);
+            }
+        });
+    }
+
+    /**
+     * @return integer number of columns
+     */
+    public int size() {
+        return columns.size();
+    }
+
+    /**
+     * @return List of the columns in the order they were added
+     */
+    List<Column> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * Estimates the cost of a cell of a character column from the
+     * lengths of evenly spaced cells, truncated at cdigits characters
+     *
+     * @param column array of CharSequence
+     * @param cdigits integer number of characters kept
+     * @return integer estimated cost of a cell
+     */
+    private static int charCost(CharSequence[] column, int cdigits) {
+        int n = Math.min(column.length, COST_SAMPLES);
+        if (n == 0) {
+            return BOOLEAN_COST;
+        }
+        long chars = 0;
+        for (int k = 0; k < n; ++k) {
+            CharSequence cell = column[(int) ((long) k * column.length / n)];
+            if (cell != null) {
+                chars += Math.min(cell.length(), cdigits);
+            }
+        }
+        return BOOLEAN_COST + (int) (CHAR_COST * chars / n);
+    }
+
+    private UnfDataset add(Column column) {
+        columns.add(column);
+        return this;
+    }
+
+    /**
+     * One column, the calculation of its digest and an estimate
+     * of its cost, to schedule the most expensive columns first
+     */
+    abstract static class Column {
+
+        /**
+         * @param engine UnfEngine with the parameters of the unf
+         * @return long estimated cost of the column, in units of
+         * BOOLEAN_COST
+         */
+        abstract long cost(UnfEngine engine);
+
+        /**
+         * @param engine UnfEngine with the parameters of the unf
+         * @return UnfResult with the digest of the column
+         * @throws IOException
+         */
+        abstract UnfResult unfResult(UnfEngine engine) throws IOException, UnfException;
+    }
+}
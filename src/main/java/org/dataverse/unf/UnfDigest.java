@@ -27,6 +27,10 @@
  * for CharSequence and Number, UnfDigest.unf, along each of the 
  * columns of the data set, one can obtain the object Unf5Class as 
  * Unf5Class signature = Unf5Digest.getSignature();
+ *
+ * The static methods share the signature and the configuration; to
+ * calculate unf's from several threads use an UnfEngine for each
+ * configuration, as returned by getEngine().
  * 
  *  
  * After Micah Altman specifications 
@@ -40,8 +44,11 @@
 package org.dataverse.unf;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.logging.Level;
@@ -50,13 +57,18 @@ import java.util.logging.Logger;
 public class UnfDigest implements UnfCons {
 
     private static Logger mLog = Logger.getLogger(UnfDigest.class.getName());
+
+    static {
+        if (!DEBUG) {
+            mLog.setLevel(Level.WARNING);
+        }
+    }
+
     private static String currentVersion = "6";
-    private static final String SHA256 = "SHA-256";
+    /** the MessageDigest algorithm for all the columns */
+    private static String mdalgor = SHA256;
     private static final String UTF8 = "UTF-8";
     private static boolean trnps = transpose;
-    /** List elements are arrays of fingerprints
-     * for every column of input data obj*/
-    private static List<List<Integer>> fingerprint = new ArrayList<List<Integer>>();
 
     private static String getExtensions(UnfClass signature) {
         StringBuffer retValBuf = new StringBuffer();
@@ -66,6 +78,10 @@ public class UnfDigest implements UnfCons {
                 retValBuf.append(":"+extensions);
             }
         }
+        if (!SHA256.equals(mdalgor)) {
+            retValBuf.append(retValBuf.length() > 0 ? "," : ":");
+            retValBuf.append(SHA512_256_EXT);
+        }
         return retValBuf.toString();
     }
     /** for debugging */
@@ -76,14 +92,15 @@ public class UnfDigest implements UnfCons {
     private static UnfClass signature = null;
     /**whether to create object of type Unf5Class */
     private static boolean buildunfObj = new Boolean(unfObj);
+    /** optional cache of the canonical bytes of String cells */
+    private static UnfStringCache stringCache = null;
+    /** optional sink of the bytes hashed for every column */
+    private static volatile UnfTraceSink traceSink = null;
 
     /**
      * Constructor
      */
     public UnfDigest() {
-        if (!DEBUG || !debug) {
-            mLog.setLevel(Level.WARNING);
-        }
 
     }
 
@@ -121,11 +138,19 @@ public class UnfDigest implements UnfCons {
     }
 
     /**
+     * The fingerprints are those stored in the signature by the last
+     * calculation; nothing else is kept between calls
      *
      * @return List of List<Integer> with finger-prints of input data array
      */
     public List<List<Integer>> getFingerprint() {
-        return fingerprint;
+        List<List<Integer>> res = new ArrayList<List<Integer>>();
+        if (signature != null) {
+            for (Integer[] fingerp : signature.getFingerprints()) {
+                res.add(Arrays.asList(fingerp));
+            }
+        }
+        return res;
     }
 
     /**
@@ -144,6 +169,29 @@ public class UnfDigest implements UnfCons {
         signature = c;
     }
 
+    /**
+     * @return String with the MessageDigest algorithm of the unf's
+     */
+    public static String getDigestAlgorithm() {
+        return mdalgor;
+    }
+
+    /**
+     * Selects the MessageDigest algorithm for all the unf's calculated
+     * afterwards. SHA-512/256 is faster on 64-bit machines, but its
+     * unf's carry the extension SHA512/256 and are never equal to
+     * standard unf's: use it only to detect changes in your own data.
+     *
+     * @param algor String UnfCons.SHA256 (the default) or UnfCons.SHA512_256
+     */
+    public static void setDigestAlgorithm(String algor) {
+        if (!SHA256.equals(algor) && !SHA512_256.equals(algor)) {
+            throw new IllegalArgumentException("digest algorithm " + algor
+                    + " is not " + SHA256 + " or " + SHA512_256);
+        }
+        mdalgor = algor;
+    }
+
     /**
      *
      * @return boolean to create object signature of class Unf5Class
@@ -160,6 +208,62 @@ public class UnfDigest implements UnfCons {
         buildunfObj = obj;
     }
 
+    /**
+     * @return UnfStringCache used for the character columns, or null
+     */
+    public static UnfStringCache getStringCache() {
+        return stringCache;
+    }
+
+    /**
+     * Sets a cache for the canonical bytes of the String cells of the
+     * character columns calculated afterwards; useful when a few values
+     * repeat many times, as in categorical variables.
+     *
+     * @param cache UnfStringCache, or null for none (the default)
+     */
+    public static void setStringCache(UnfStringCache cache) {
+        stringCache = cache;
+    }
+
+    /**
+     * @return UnfTraceSink of the hashed bytes, or null
+     */
+    public static UnfTraceSink getTraceSink() {
+        return traceSink;
+    }
+
+    /**
+     * Sets a sink for every byte hashed for the columns calculated
+     * afterwards, to debug a unf: the normalized values and the tokens
+     * of missing and special values, in the order they are hashed;
+     * tracing costs nothing without a sink.
+     *
+     * @param sink UnfTraceSink, or null to stop tracing (the default)
+     */
+    public static void setTraceSink(UnfTraceSink sink) {
+        traceSink = sink;
+    }
+
+    /**
+     * @return UnfEngine with the defaults in UnfCons and the current
+     * version, digest algorithm and cache of String cells
+     */
+    public static UnfEngine getEngine() {
+        return getEngine(DEF_NDGTS, DEF_CDGTS, DEF_HSZ);
+    }
+
+    /**
+     * @param ndigits integer significant digits including decimal point
+     * @param cdigits integer number of significant characters
+     * @param hsz integer number of bits of the digest
+     * @return UnfEngine with the current version, digest algorithm
+     * and cache of String cells
+     */
+    public static UnfEngine getEngine(int ndigits, int cdigits, int hsz) {
+        return new UnfEngine(currentVersion, mdalgor, ndigits, cdigits, hsz, stringCache);
+    }
+
     /**
      * Some warnings for consistency with Micah Alatman's code specs
      *
@@ -168,9 +272,6 @@ public class UnfDigest implements UnfCons {
      * @param version float unf version number
      */
     public static void dowarnings(int ndigits, int cdigits) {
-        if (!DEBUG) {
-            mLog.setLevel(Level.WARNING);
-        }
         if (ndigits != 0 && (ndigits < NDGTS_BNDS[0] || ndigits > NDGTS_BNDS[1])) {
             mLog.warning("ndigts range is between " + NDGTS_BNDS[0] + " and " + NDGTS_BNDS[1]);
         }
@@ -221,7 +322,8 @@ public class UnfDigest implements UnfCons {
         }
         String algor = SHA256;
         String enc = UTF8;
-        int hsz = 128; // TODO default for dvn only
+        /** a third entry is the hash size in bits**/
+        int hsz = (ln <= 2) ? DEF_HSZ : (int) digits[2];
         if (buildunfObj) {
             signature = new UnfClass(cdigits, ndigits, hsz);
         }
@@ -233,6 +335,305 @@ public class UnfDigest implements UnfCons {
         return res;
     }
 
+    /**
+     * Calculate UNF for a slice of a one-dimensional array of double.
+     * The values are digested in place, without boxing them
+     * or copying the slice into a matrix.
+     *
+     * @param obj one-dimensional array of double
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @param digits varargs with array of Integer
+     * @return array of String with the base64 encoding of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static String[] unf(final double[] obj, int off, int len, Integer... digits) throws
+            UnsupportedEncodingException, UnfException, IOException {
+        if (obj == null) {
+            return null;
+        }
+        int ndigits = sliceDigits(obj.length, off, len, digits);
+        String[] res = new String[1];
+        res[0] = unfV(obj, off, len, ndigits, signature);
+        return res;
+    }
+
+    /**
+     * Calculate the UNF's of a slice of an array of double at several
+     * numbers of digits, in one pass over the values
+     *
+     * @param obj one-dimensional array of double
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @param ndigits array of integer significant digits that include decimal point
+     * @return array of String with the unf of the column for each element of ndigits
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static String[] unf(final double[] obj, int off, int len, int[] ndigits) throws
+            UnsupportedEncodingException, UnfException, IOException {
+        if (obj == null) {
+            return null;
+        }
+        checkSlice(obj.length, off, len);
+        for (int ndg : ndigits) {
+            dowarnings(ndg, DEF_CDGTS);
+        }
+        UnfNumber<Double> unfno = new UnfNumber<Double>(mdalgor);
+        List<List<Integer>> fingerps = new ArrayList<List<Integer>>();
+        List<StringBuilder> hexes = new ArrayList<StringBuilder>();
+        String[] b64 = unfno.RUNF5(obj, off, len, ndigits, fingerps, hexes);
+        String[] res = new String[ndigits.length];
+        for (int i = 0; i < ndigits.length; ++i) {
+            // the static signature holds one number of digits, so it is left as it is
+            res[i] = numberUnf(b64[i], fingerps.get(i), hexes.get(i), ndigits[i], null);
+        }
+        return res;
+    }
+
+    /**
+     * Overloaded method for a slice of an array of Number; the
+     * values are digested in place, and BigDecimal or BigInteger
+     * values keep all their digits until they are rounded.
+     *
+     * @param <T> Generic type that extends Number
+     * @param obj one-dimensional array of generic class T that extends Number
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @param digits varargs with array of Integer
+     * @return array of String with the base64 encoding of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static <T extends Number> String[] unf(final T[] obj, int off, int len, Integer... digits) throws
+            UnsupportedEncodingException, UnfException, IOException {
+        if (obj == null) {
+            return null;
+        }
+        int ndigits = sliceDigits(obj.length, off, len, digits);
+        String[] res = new String[1];
+        res[0] = unfV(obj, off, len, ndigits, signature);
+        return res;
+    }
+
+    /**
+     * Overloaded method for a slice of an array of long;
+     * the integers are rounded without conversion to double.
+     *
+     * @param obj one-dimensional array of long
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @param digits varargs with array of Integer
+     * @return array of String with the base64 encoding of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static String[] unf(final long[] obj, int off, int len, Integer... digits) throws
+            UnsupportedEncodingException, UnfException, IOException {
+        if (obj == null) {
+            return null;
+        }
+        int ndigits = sliceDigits(obj.length, off, len, digits);
+        String[] res = new String[1];
+        res[0] = unfV(obj, off, len, ndigits, signature);
+        return res;
+    }
+
+    /**
+     * Overloaded method for a slice of an array of int;
+     * the integers are rounded without conversion to double.
+     *
+     * @param obj one-dimensional array of int
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @param digits varargs with array of Integer
+     * @return array of String with the base64 encoding of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static String[] unf(final int[] obj, int off, int len, Integer... digits) throws
+            UnsupportedEncodingException, UnfException, IOException {
+        if (obj == null) {
+            return null;
+        }
+        int ndigits = sliceDigits(obj.length, off, len, digits);
+        String[] res = new String[1];
+        res[0] = unfV(obj, off, len, ndigits, signature);
+        return res;
+    }
+
+    /**
+     * Overloaded method for a slice of an array of short;
+     * each value is looked up in a table of normalized bytes.
+     *
+     * @param obj one-dimensional array of short
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @param digits varargs with array of Integer
+     * @return array of String with the base64 encoding of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static String[] unf(final short[] obj, int off, int len, Integer... digits) throws
+            UnsupportedEncodingException, UnfException, IOException {
+        if (obj == null) {
+            return null;
+        }
+        int ndigits = sliceDigits(obj.length, off, len, digits);
+        String[] res = new String[1];
+        res[0] = unfV(obj, off, len, ndigits, signature);
+        return res;
+    }
+
+    /**
+     * Overloaded method for a slice of an array of byte;
+     * each value is looked up in a table of normalized bytes.
+     *
+     * @param obj one-dimensional array of byte
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @param digits varargs with array of Integer
+     * @return array of String with the base64 encoding of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static String[] unf(final byte[] obj, int off, int len, Integer... digits) throws
+            UnsupportedEncodingException, UnfException, IOException {
+        if (obj == null) {
+            return null;
+        }
+        int ndigits = sliceDigits(obj.length, off, len, digits);
+        String[] res = new String[1];
+        res[0] = unfV(obj, off, len, ndigits, signature);
+        return res;
+    }
+
+    /**
+     * Checks the slice of a primitive array and prepares the signature
+     * as unf does for bi-dimensional arrays of numeric values
+     *
+     * @param length integer length of the array
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @param digits varargs with array of Integer
+     * @return integer with ndigits
+     */
+    private static int sliceDigits(int length, int off, int len, Integer... digits) {
+        checkSlice(length, off, len);
+        int ln = digits.length;
+        /** if only one entry it's ndigits**/
+        int ndigits = (ln <= 0) ? DEF_NDGTS : (int) digits[0];
+        int cdigits = (ln <= 1) ? DEF_CDGTS : (int) digits[1];
+        dowarnings(ndigits, cdigits);
+        /** a third entry is the hash size in bits**/
+        int hsz = (ln <= 2) ? DEF_HSZ : (int) digits[2];
+        if (buildunfObj) {
+            signature = new UnfClass(cdigits, ndigits, hsz);
+        }
+        return ndigits;
+    }
+
+    /**
+     * Calculate the digest of a slice of an array of double; the
+     * UnfResult gives the unf of the column for every hash size.
+     *
+     * @param obj one-dimensional array of double
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @param digits varargs with ndigits, cdigits and hash size, as for unf
+     * @return UnfResult with the digest of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static UnfResult unfResult(final double[] obj, int off, int len, Integer... digits) throws
+            UnsupportedEncodingException, UnfException, IOException {
+        int ln = digits.length;
+        int ndigits = (ln <= 0) ? DEF_NDGTS : (int) digits[0];
+        int cdigits = (ln <= 1) ? DEF_CDGTS : (int) digits[1];
+        int hsz = (ln <= 2) ? DEF_HSZ : (int) digits[2];
+        return getEngine(ndigits, cdigits, hsz).unfResult(obj, off, len);
+    }
+
+    /**
+     * Calculate the digest of a slice of an array of Number; the
+     * UnfResult gives the unf of the column for every hash size.
+     *
+     * @param <T> Generic type that extends Number
+     * @param obj one-dimensional array of generic class T that extends Number
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @param digits varargs with ndigits, cdigits and hash size, as for unf
+     * @return UnfResult with the digest of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static <T extends Number> UnfResult unfResult(final T[] obj, int off, int len,
+            Integer... digits) throws UnsupportedEncodingException, UnfException, IOException {
+        int ln = digits.length;
+        int ndigits = (ln <= 0) ? DEF_NDGTS : (int) digits[0];
+        int cdigits = (ln <= 1) ? DEF_CDGTS : (int) digits[1];
+        int hsz = (ln <= 2) ? DEF_HSZ : (int) digits[2];
+        return getEngine(ndigits, cdigits, hsz).unfResult(obj, off, len);
+    }
+
+    /**
+     * Calculate the digest of an array of CharSequence; the
+     * UnfResult gives the unf of the column for every hash size.
+     *
+     * @param <T> Generic type that extends CharSequence
+     * @param obj one-dimensional array of generic class T that extends CharSequence
+     * @param digits varargs with cdigits, ndigits and hash size, as for unf
+     * @return UnfResult with the digest of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static <T extends CharSequence> UnfResult unfResult(final T[] obj, Integer... digits) throws
+            UnsupportedEncodingException, UnfException, IOException {
+        int ln = digits.length;
+        int cdigits = (ln <= 0) ? DEF_CDGTS : (int) digits[0];
+        int ndigits = (ln <= 1) ? DEF_NDGTS : (int) digits[1];
+        int hsz = (ln <= 2) ? DEF_HSZ : (int) digits[2];
+        return getEngine(ndigits, cdigits, hsz).unfResult(obj);
+    }
+
+    /**
+     * Calculate the digest of a slice of an array of boolean; the
+     * UnfResult gives the unf of the column for every hash size.
+     *
+     * @param obj one-dimensional array of boolean
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @return UnfResult with the digest of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static UnfResult unfResult(final boolean[] obj, int off, int len) throws
+            UnsupportedEncodingException, IOException {
+        return getEngine().unfResult(obj, off, len);
+    }
+
+    /**
+     * @param length integer length of the array
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @throws IndexOutOfBoundsException if the slice is not in the array
+     */
+    static void checkSlice(int length, int off, int len) {
+        if (off < 0 || len < 0 || off > length - len) {
+            throw new IndexOutOfBoundsException("offset " + off + ", length " + len
+                    + ", array length " + length);
+        }
+    }
+
+    /**
+     * @param signature UnfClass with the parameters, or null
+     * @return integer number of bits of the digest kept in the unf
+     */
+    private static int hashSize(UnfClass signature) {
+        return (signature != null) ? signature.getHsize() : DEF_HSZ;
+    }
+
     public static String [] unf(BitString[] b) throws UnsupportedEncodingException, IOException{
         int nrow = 1;
         int hsz = 128; // TODO default for dvn only
@@ -257,6 +658,31 @@ public class UnfDigest implements UnfCons {
         return res;
     }
 
+    /**
+     * Overloaded method for a slice of an array of boolean
+     *
+     * @param b one-dimensional array of boolean
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @return array of String with the base64 encoding of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static String[] unf(final boolean[] b, int off, int len) throws
+            UnsupportedEncodingException, IOException {
+        if (b == null) {
+            return null;
+        }
+        checkSlice(b.length, off, len);
+        int hsz = 128; // TODO default for dvn only
+        if (buildunfObj) {
+            signature = new UnfClass(DEF_CDGTS, DEF_NDGTS, hsz);
+        }
+        String[] res = new String[1];
+        res[0] = unfV(b, off, len, signature);
+        return res;
+    }
+
     /**
      * Overloaded method
      * @param <T> Generic array that extends CharSequence
@@ -317,7 +743,8 @@ public class UnfDigest implements UnfCons {
             nrow = tobj[0].length;
             topass = obj;
         }
-        int hsz = 128; // TODO default for dvn only
+        /** a third entry is the hash size in bits**/
+        int hsz = (ln <= 2) ? DEF_HSZ : (int) digits[2];
         if (buildunfObj) {
             signature = new UnfClass(cdigits, ndigits, hsz);
         }
@@ -330,40 +757,333 @@ public class UnfDigest implements UnfCons {
     }
 
     /**
-     * Overloaded 
-     * @param <T> Generic array that extends Number
-     * @param obj one-dimensional array of generic class T that extends Number
-     * @param ndg integer with significant digits that includes decimal point
-     * @return String with base64 encoding
+     * Calculate UNF for a dictionary-encoded column of character values:
+     * cell k is dict[codes[k]], or a missing value if codes[k] is negative.
+     * Each entry of dict is normalized once; the unf is the same as for
+     * the expanded column.
+     *
+     * @param <T> Generic array that extends CharSequence
+     * @param dict one-dimensional array of generic class T with the values
+     * @param codes array of integer with the index in dict of every cell
+     * @param digits varargs with cdigits, ndigits and hash size
+     * @return array of String with the base64 encoding of the column
      * @throws UnsupportedEncodingException
      * @throws IOException
      */
-    public static <T extends Number> String unfV(final T[] obj, int ndg) throws
+    public static <T extends CharSequence> String[] unf(final T[] dict, final int[] codes,
+            Integer... digits) throws
             UnsupportedEncodingException,
             UnfException,
             IOException {
-        int hsz = 128;
-        signature = new UnfClass(DEF_CDGTS, ndg, hsz);
-        return unfV(obj, ndg, signature);
+        if (dict == null) {
+            return null;
+        }
+        int ln = digits.length;
+        /** if only one digit entry then is cdigits*/
+        int cdigits = (ln <= 0) ? DEF_CDGTS : (int) digits[0];
+        int ndigits = (ln <= 1) ? DEF_NDGTS : (int) digits[1];
+        dowarnings(ndigits, cdigits);
+        /** a third entry is the hash size in bits**/
+        int hsz = (ln <= 2) ? DEF_HSZ : (int) digits[2];
+        if (buildunfObj) {
+            signature = new UnfClass(cdigits, ndigits, hsz);
+        }
+        UnfString<T> unfno = new UnfString<T>(mdalgor);
+        unfno.setHsize(hashSize(signature));
+        UnfByteTable table = unfno.canonTable(dict, cdigits);
+        Character[] base64 = new Character[64];
+        List<Integer> fingerp = new ArrayList<Integer>();
+        StringBuilder hex = new StringBuilder();
+        String b64 = unfno.RUNF5(table, codes, 0, codes.length, fingerp, base64, hex);
+        String[] res = new String[1];
+        res[0] = stringUnf(b64, fingerp, hex, cdigits, signature);
+        return res;
     }
 
     /**
-     * Calculates unf for one-dimensional array or column of data set
-     * 
+     * Calculate UNF for a dictionary-encoded column of numeric values:
+     * cell k is dict[codes[k]], or a missing value if codes[k] is negative.
+     * Each entry of dict is rounded once; the unf is the same as for
+     * the expanded column.
+     *
      * @param <T> Generic array that extends Number
-     * @param obj one-dimensional array of generic class T that extends Number
-     * @param ndg integer significant digits that includes decimal point
-     * @param vers float with unf version
-     * @return String with base64 encoding
+     * @param dict one-dimensional array of generic class T with the values
+     * @param codes array of integer with the index in dict of every cell
+     * @param digits varargs with ndigits, cdigits and hash size
+     * @return array of String with the base64 encoding of the column
      * @throws UnsupportedEncodingException
      * @throws IOException
      */
-    public static <T extends Number> String unfV(final T[] obj,
+    public static <T extends Number> String[] unf(final T[] dict, final int[] codes,
+            Integer... digits) throws
+            UnsupportedEncodingException,
+            UnfException,
+            IOException {
+        if (dict == null) {
+            return null;
+        }
+        int ndigits = sliceDigits(codes.length, 0, codes.length, digits);
+        UnfNumber<T> unfno = new UnfNumber<T>(mdalgor);
+        unfno.setHsize(hashSize(signature));
+        UnfByteTable table = unfno.canonTable(dict, ndigits);
+        Character[] base64 = new Character[64];
+        List<Integer> fingerp = new ArrayList<Integer>();
+        StringBuilder hex = new StringBuilder();
+        String b64 = unfno.RUNF5(table, codes, 0, codes.length, fingerp, base64, hex);
+        String[] res = new String[1];
+        res[0] = numberUnf(b64, fingerp, hex, ndigits, signature);
+        return res;
+    }
+
+    /**
+     * Calculate UNF for a column of strings read from Readers, one per
+     * cell, null for missing values; the unf is the same as for the
+     * array of the Strings they contain, but only the first cdigits
+     * characters of a cell are kept in memory. The Readers are not closed.
+     *
+     * @param cells Iterable of Reader with the cells in order
+     * @param digits varargs with cdigits, ndigits and hash size
+     * @return array of String with the base64 encoding of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static String[] unf(final Iterable<? extends Reader> cells, Integer... digits) throws
+            UnsupportedEncodingException,
+            UnfException,
+            IOException {
+        if (cells == null) {
+            return null;
+        }
+        int ln = digits.length;
+        /** if only one digit entry then is cdigits*/
+        int cdigits = (ln <= 0) ? DEF_CDGTS : (int) digits[0];
+        int ndigits = (ln <= 1) ? DEF_NDGTS : (int) digits[1];
+        dowarnings(ndigits, cdigits);
+        /** a third entry is the hash size in bits**/
+        int hsz = (ln <= 2) ? DEF_HSZ : (int) digits[2];
+        if (buildunfObj) {
+            signature = new UnfClass(cdigits, ndigits, hsz);
+        }
+        String[] res = new String[1];
+        res[0] = unfV(cells, cdigits, signature);
+        return res;
+    }
+
+    /**
+     * Calculates the unf for a column of strings read from Readers
+     *
+     * @param cells Iterable of Reader with the cells in order
+     * @param cdg integer with number of chars to keep
+     * @param signature UnfClass to store the results, or null
+     * @return String with base64 encoding
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static String unfV(final Iterable<? extends Reader> cells, int cdg,
+            UnfClass signature) throws
+            UnsupportedEncodingException,
+            UnfException,
+            IOException {
+        UnfString<String> unfno = new UnfString<String>(mdalgor);
+        unfno.setHsize(hashSize(signature));
+        Character[] base64 = new Character[64];
+        List<Integer> fingerp = new ArrayList<Integer>();
+        StringBuilder hex = new StringBuilder();
+        String b64 = unfno.RUNF5(cells, cdg, fingerp, base64, hex);
+        return stringUnf(b64, fingerp, hex, cdg, signature);
+    }
+
+    /**
+     * Calculate UNF for a column of UTF-8 encoded strings given as bytes;
+     * cell k is data[offsets[k]] up to data[offsets[k + 1]]. The unf is
+     * the same as for the array of the decoded Strings, without creating
+     * them when the cells are well-formed UTF-8.
+     *
+     * @param data byte array with the cells one after the other
+     * @param offsets integer array with the start of every cell and,
+     * as last element, the end of the last cell
+     * @param miss array of booleans for missing values, or null
+     * @param digits varargs with cdigits, ndigits and hash size
+     * @return array of String with the base64 encoding of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static String[] unf(final byte[] data, final int[] offsets, final boolean[] miss,
+            Integer... digits) throws
+            UnsupportedEncodingException,
+            UnfException,
+            IOException {
+        if (data == null) {
+            return null;
+        }
+        checkCells(data.length, offsets, miss);
+        int ln = digits.length;
+        /** if only one digit entry then is cdigits*/
+        int cdigits = (ln <= 0) ? DEF_CDGTS : (int) digits[0];
+        int ndigits = (ln <= 1) ? DEF_NDGTS : (int) digits[1];
+        dowarnings(ndigits, cdigits);
+        /** a third entry is the hash size in bits**/
+        int hsz = (ln <= 2) ? DEF_HSZ : (int) digits[2];
+        if (buildunfObj) {
+            signature = new UnfClass(cdigits, ndigits, hsz);
+        }
+        String[] res = new String[1];
+        res[0] = unfV(data, offsets, miss, cdigits, signature);
+        return res;
+    }
+
+    /**
+     * Overloaded method for cells in a ByteBuffer, from its position
+     * up to its limit; the bytes are digested in place if the buffer
+     * has an accessible array, otherwise they are copied once
+     *
+     * @param data ByteBuffer with the cells one after the other
+     * @param offsets integer array with the start of every cell, relative
+     * to the position of data, and, as last element, the end of the last cell
+     * @param miss array of booleans for missing values, or null
+     * @param digits varargs with cdigits, ndigits and hash size
+     * @return array of String with the base64 encoding of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static String[] unf(final ByteBuffer data, final int[] offsets, final boolean[] miss,
+            Integer... digits) throws
+            UnsupportedEncodingException,
+            UnfException,
+            IOException {
+        if (data == null) {
+            return null;
+        }
+        checkCells(data.remaining(), offsets, miss);
+        if (data.hasArray()) {
+            int base = data.arrayOffset() + data.position();
+            int[] shifted = offsets;
+            if (base != 0) {
+                shifted = new int[offsets.length];
+                for (int k = 0; k < offsets.length; ++k) {
+                    shifted[k] = offsets[k] + base;
+                }
+            }
+            return unf(data.array(), shifted, miss, digits);
+        }
+        byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+        return unf(bytes, offsets, miss, digits);
+    }
+
+    /**
+     * Calculates the unf for a column of UTF-8 encoded strings given as bytes
+     *
+     * @param data byte array with the cells one after the other
+     * @param offsets integer array with the start of every cell and,
+     * as last element, the end of the last cell
+     * @param miss array of booleans for missing values, or null
+     * @param cdg integer with number of chars to keep
+     * @param signature UnfClass to store the results, or null
+     * @return String with base64 encoding
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static String unfV(final byte[] data, final int[] offsets, final boolean[] miss,
+            int cdg, UnfClass signature) throws
+            UnsupportedEncodingException,
+            UnfException,
+            IOException {
+        UnfString<String> unfno = new UnfString<String>(mdalgor);
+        unfno.setHsize(hashSize(signature));
+        Character[] base64 = new Character[64];
+        List<Integer> fingerp = new ArrayList<Integer>();
+        StringBuilder hex = new StringBuilder();
+        String b64 = unfno.RUNF5(data, offsets, miss, cdg, fingerp, base64, hex);
+        return stringUnf(b64, fingerp, hex, cdg, signature);
+    }
+
+    /**
+     * Adds the header to the base64 encoding of a character column
+     * and stores the results in signature
+     *
+     * @param b64 String with base64 encoding
+     * @param fingerp List of Integer with the bytes from digest
+     * @param hex StringBuilder with the hex-decimal representation
+     * @param cdg integer with number of chars to keep
+     * @param signature UnfClass to store the results, or null
+     * @return String with the unf
+     */
+    private static String stringUnf(String b64, List<Integer> fingerp,
+            StringBuilder hex, int cdg, UnfClass signature) {
+        boolean buildclass = false;
+        if (signature != null) {
+            buildclass = true;
+        } else {
+            int hsz = 128;
+            signature = new UnfClass(cdg, DEF_NDGTS, hsz);
+        }
+        b64 = "UNF:" + getVersion() + getExtensions(signature) + ":" + b64;
+        if (buildunfObj && buildclass) {
+            buildUnf5Class(fingerp, hex, b64, signature);
+        }
+        return b64;
+    }
+
+    /**
+     * @param length integer length of the array of bytes
+     * @param offsets integer array with the start of every cell and
+     * the end of the last cell
+     * @param miss array of booleans for missing values, or null
+     * @throws IndexOutOfBoundsException if a cell is not in the array
+     */
+    static void checkCells(int length, int[] offsets, boolean[] miss) {
+        if (offsets.length < 1 || offsets[0] < 0 || offsets[offsets.length - 1] > length) {
+            throw new IndexOutOfBoundsException("offsets out of array of length " + length);
+        }
+        for (int k = 1; k < offsets.length; ++k) {
+            if (offsets[k] < offsets[k - 1]) {
+                throw new IndexOutOfBoundsException("cell " + (k - 1) + " from "
+                        + offsets[k - 1] + " to " + offsets[k]);
+            }
+        }
+        if (miss != null && miss.length < offsets.length - 1) {
+            throw new IndexOutOfBoundsException("missing values for " + miss.length
+                    + " of " + (offsets.length - 1) + " cells");
+        }
+    }
+
+    /**
+     * Overloaded 
+     * @param <T> Generic array that extends Number
+     * @param obj one-dimensional array of generic class T that extends Number
+     * @param ndg integer with significant digits that includes decimal point
+     * @return String with base64 encoding
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static <T extends Number> String unfV(final T[] obj, int ndg) throws
+            UnsupportedEncodingException,
+            UnfException,
+            IOException {
+        int hsz = 128;
+        signature = new UnfClass(DEF_CDGTS, ndg, hsz);
+        return unfV(obj, ndg, signature);
+    }
+
+    /**
+     * Calculates unf for one-dimensional array or column of data set
+     * 
+     * @param <T> Generic array that extends Number
+     * @param obj one-dimensional array of generic class T that extends Number
+     * @param ndg integer significant digits that includes decimal point
+     * @param vers float with unf version
+     * @return String with base64 encoding
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static <T extends Number> String unfV(final T[] obj,
             int ndg, UnfClass signature) throws
             UnsupportedEncodingException,
             UnfException,
             IOException {
-        UnfNumber<T> unfno = new UnfNumber<T>();
+        UnfNumber<T> unfno = new UnfNumber<T>(mdalgor);
+        unfno.setHsize(hashSize(signature));
         Character[] base64 = new Character[64];
         List<Integer> fingerp = new ArrayList<Integer>();
         StringBuilder hex = new StringBuilder();
@@ -385,6 +1105,192 @@ public class UnfDigest implements UnfCons {
         return b64;
     }
 
+    /**
+     * Calculates unf for a slice of an array of Number
+     *
+     * @param <T> Generic array that extends Number
+     * @param obj one-dimensional array of generic class T that extends Number
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @param ndg integer significant digits that includes decimal point
+     * @param signature UnfClass to store the results, or null
+     * @return String with base64 encoding
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static <T extends Number> String unfV(final T[] obj, int off, int len,
+            int ndg, UnfClass signature) throws
+            UnsupportedEncodingException,
+            UnfException,
+            IOException {
+        UnfNumber<T> unfno = new UnfNumber<T>(mdalgor);
+        unfno.setHsize(hashSize(signature));
+        Character[] base64 = new Character[64];
+        List<Integer> fingerp = new ArrayList<Integer>();
+        StringBuilder hex = new StringBuilder();
+        String b64 = unfno.RUNF5(obj, off, len, ndg, fingerp, base64, hex);
+        return numberUnf(b64, fingerp, hex, ndg, signature);
+    }
+
+    /**
+     * Calculates unf for a slice of a primitive array of double
+     *
+     * @param obj one-dimensional array of double
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @param ndg integer significant digits that includes decimal point
+     * @param signature UnfClass to store the results, or null
+     * @return String with base64 encoding
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static String unfV(final double[] obj, int off, int len,
+            int ndg, UnfClass signature) throws
+            UnsupportedEncodingException,
+            UnfException,
+            IOException {
+        UnfNumber<Double> unfno = new UnfNumber<Double>(mdalgor);
+        unfno.setHsize(hashSize(signature));
+        Character[] base64 = new Character[64];
+        List<Integer> fingerp = new ArrayList<Integer>();
+        StringBuilder hex = new StringBuilder();
+        String b64 = unfno.RUNF5(obj, off, len, ndg, fingerp, base64, hex);
+        return numberUnf(b64, fingerp, hex, ndg, signature);
+    }
+
+    /**
+     * Calculates unf for a slice of a primitive array of long
+     *
+     * @param obj one-dimensional array of long
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @param ndg integer significant digits that includes decimal point
+     * @param signature UnfClass to store the results, or null
+     * @return String with base64 encoding
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static String unfV(final long[] obj, int off, int len,
+            int ndg, UnfClass signature) throws
+            UnsupportedEncodingException,
+            UnfException,
+            IOException {
+        UnfNumber<Long> unfno = new UnfNumber<Long>(mdalgor);
+        unfno.setHsize(hashSize(signature));
+        Character[] base64 = new Character[64];
+        List<Integer> fingerp = new ArrayList<Integer>();
+        StringBuilder hex = new StringBuilder();
+        String b64 = unfno.RUNF5(obj, off, len, ndg, fingerp, base64, hex);
+        return numberUnf(b64, fingerp, hex, ndg, signature);
+    }
+
+    /**
+     * Calculates unf for a slice of a primitive array of int
+     *
+     * @param obj one-dimensional array of int
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @param ndg integer significant digits that includes decimal point
+     * @param signature UnfClass to store the results, or null
+     * @return String with base64 encoding
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static String unfV(final int[] obj, int off, int len,
+            int ndg, UnfClass signature) throws
+            UnsupportedEncodingException,
+            UnfException,
+            IOException {
+        UnfNumber<Integer> unfno = new UnfNumber<Integer>(mdalgor);
+        unfno.setHsize(hashSize(signature));
+        Character[] base64 = new Character[64];
+        List<Integer> fingerp = new ArrayList<Integer>();
+        StringBuilder hex = new StringBuilder();
+        String b64 = unfno.RUNF5(obj, off, len, ndg, fingerp, base64, hex);
+        return numberUnf(b64, fingerp, hex, ndg, signature);
+    }
+
+    /**
+     * Calculates unf for a slice of a primitive array of short
+     *
+     * @param obj one-dimensional array of short
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @param ndg integer significant digits that includes decimal point
+     * @param signature UnfClass to store the results, or null
+     * @return String with base64 encoding
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static String unfV(final short[] obj, int off, int len,
+            int ndg, UnfClass signature) throws
+            UnsupportedEncodingException,
+            UnfException,
+            IOException {
+        UnfNumber<Short> unfno = new UnfNumber<Short>(mdalgor);
+        unfno.setHsize(hashSize(signature));
+        Character[] base64 = new Character[64];
+        List<Integer> fingerp = new ArrayList<Integer>();
+        StringBuilder hex = new StringBuilder();
+        String b64 = unfno.RUNF5(obj, off, len, ndg, fingerp, base64, hex);
+        return numberUnf(b64, fingerp, hex, ndg, signature);
+    }
+
+    /**
+     * Calculates unf for a slice of a primitive array of byte
+     *
+     * @param obj one-dimensional array of byte
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @param ndg integer significant digits that includes decimal point
+     * @param signature UnfClass to store the results, or null
+     * @return String with base64 encoding
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static String unfV(final byte[] obj, int off, int len,
+            int ndg, UnfClass signature) throws
+            UnsupportedEncodingException,
+            UnfException,
+            IOException {
+        UnfNumber<Byte> unfno = new UnfNumber<Byte>(mdalgor);
+        unfno.setHsize(hashSize(signature));
+        Character[] base64 = new Character[64];
+        List<Integer> fingerp = new ArrayList<Integer>();
+        StringBuilder hex = new StringBuilder();
+        String b64 = unfno.RUNF5(obj, off, len, ndg, fingerp, base64, hex);
+        return numberUnf(b64, fingerp, hex, ndg, signature);
+    }
+
+    /**
+     * Adds the header to the base64 encoding of a numeric column
+     * and stores the results in signature
+     *
+     * @param b64 String with base64 encoding
+     * @param fingerp List of Integer with the bytes from digest
+     * @param hex StringBuilder with the hex-decimal representation
+     * @param ndg integer significant digits that includes decimal point
+     * @param signature UnfClass to store the results, or null
+     * @return String with the unf
+     */
+    private static String numberUnf(String b64, List<Integer> fingerp,
+            StringBuilder hex, int ndg, UnfClass signature) {
+        boolean buildclass=false;
+        if (signature != null){
+            buildclass = true;
+        } else{
+            int hsz = 128;
+            signature = new UnfClass(DEF_CDGTS, ndg, hsz);
+        }
+
+        b64 = "UNF:" + getVersion() + getExtensions(signature) + ":" + b64;
+        if (buildunfObj && buildclass) {
+            buildUnf5Class(fingerp, hex, b64, signature);
+        }
+
+        return b64;
+    }
+
     /**
      * Overloaded
      * @param <T> Generic array that extends CharSequence
@@ -419,7 +1325,9 @@ public class UnfDigest implements UnfCons {
             UnsupportedEncodingException,
             UnfException,
             IOException{
-        UnfString<T> unfno = new UnfString<T>();
+        UnfString<T> unfno = new UnfString<T>(mdalgor);
+        unfno.setHsize(hashSize(signature));
+        unfno.setCache(stringCache);
         String init = String.format("%064d", 0);
         Character[] base64 = new Character[64];
 
@@ -429,7 +1337,6 @@ public class UnfDigest implements UnfCons {
         StringBuilder hex = new StringBuilder();
         /**Define encoding and mdalgor according to version (vers)*/
         String b64 = unfno.RUNF5((CharSequence[]) obj, b, cdg, fingerp, base64, hex);
-        fingerprint.add(fingerp);
         boolean buildclass=false;
         if (signature != null){
             buildclass = true;
@@ -457,7 +1364,6 @@ public class UnfDigest implements UnfCons {
     private static void buildUnf5Class(List<Integer> fingerp,
             StringBuilder hex, String b64, UnfClass signature) {
         int sz = fingerp.size();
-        fingerprint.add(fingerp);
         Integer[] toadd = fingerp.toArray(new Integer[sz]);
         signature.getFingerprints().add(toadd);
         if (hex != null) {
@@ -515,7 +1421,8 @@ public class UnfDigest implements UnfCons {
     public static String unfV(final Boolean[] obj, UnfClass signature) throws
             UnsupportedEncodingException,
             IOException {
-        UnfBoolean unfno = new UnfBoolean();
+        UnfBoolean unfno = new UnfBoolean(mdalgor);
+        unfno.setHsize(hashSize(signature));
         Character[] base64 = new Character[64];
         List<Integer> fingerp = new ArrayList<Integer>();
         StringBuilder hex = new StringBuilder();
@@ -537,11 +1444,47 @@ public class UnfDigest implements UnfCons {
         return b64;
     }
 
+    /**
+     * Calculates unf for a slice of a primitive array of boolean
+     *
+     * @param obj one-dimensional array of boolean
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @param signature UnfClass to store the results, or null
+     * @return String with base64 encoding
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public static String unfV(final boolean[] obj, int off, int len, UnfClass signature) throws
+            UnsupportedEncodingException,
+            IOException {
+        UnfBoolean<Number> unfno = new UnfBoolean<Number>(mdalgor);
+        unfno.setHsize(hashSize(signature));
+        Character[] base64 = new Character[64];
+        List<Integer> fingerp = new ArrayList<Integer>();
+        StringBuilder hex = new StringBuilder();
+        String b64 = unfno.RUNF5(obj, off, len, fingerp, base64, hex);
+        boolean buildclass=false;
+        if (signature != null){
+            buildclass = true;
+        } else{
+            signature = new UnfClass(DEF_CDGTS, DEF_NDGTS, DEF_HSZ);
+        }
+
+        b64 = "UNF:" + getVersion() + getExtensions(signature) + ":" + b64;
+        if (buildunfObj && buildclass) {
+            buildUnf5Class(fingerp, hex, b64, signature);
+        }
+
+        return b64;
+    }
+
     public static String unfV(final BitString[] obj,
             UnfClass signature) throws
             UnsupportedEncodingException, IOException{
         int nrows = obj.length;
-        UnfBitfield unfno = new UnfBitfield();
+        UnfBitfield unfno = new UnfBitfield(mdalgor);
+        unfno.setHsize(hashSize(signature));
         String init = String.format("%064d", 0);
         Character[] base64 = new Character[64];
 
@@ -556,7 +1499,6 @@ public class UnfDigest implements UnfCons {
         }
         /**Define encoding and mdalgor according to version (vers)*/
         String b64 = unfno.RUNF5((CharSequence[]) cobj, b,  fingerp, base64, hex);
-        fingerprint.add(fingerp);
         boolean buildclass=false;
         if (signature != null){
             buildclass = true;
@@ -16,9 +16,15 @@
 
 package org.dataverse.unf;
 
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,13 +32,20 @@ public class UnfDigestUtils implements UnfCons {
 
     private static Logger mLog = Logger.getLogger(UnfDigestUtils.class.getName());
 
+    static {
+        if (!DEBUG) {
+            mLog.setLevel(Level.WARNING);
+        }
+    }
+
+    /** MessageDigest of every algorithm, never updated, to be cloned */
+    private static final ConcurrentMap<String, MessageDigest> prototypes =
+            new ConcurrentHashMap<String, MessageDigest>();
+
     /**
      * Constructor
      */
     public UnfDigestUtils() {
-        if (!DEBUG) {
-            mLog.setLevel(Level.WARNING);
-        }
     }
 
     /**
@@ -80,9 +93,6 @@ public class UnfDigestUtils implements UnfCons {
      * @return transpose array 
      */
     public static <T extends Object> Object[][] transArray(final T[][] obj) {
-        if (!DEBUG) {
-            mLog.setLevel(Level.WARNING);
-        }
         int ncol = obj[0].length;
         int nrow = countRows(obj);
         Object[][] objtrans = new Object[ncol][nrow];
@@ -95,6 +105,81 @@ public class UnfDigestUtils implements UnfCons {
         return objtrans;
     }
 
+    /**
+     * Canonical forms are ascii; when the original and the final
+     * encodings are the same and write ascii as single bytes, the
+     * conversions of the bytes leave them unchanged.
+     *
+     * @param orencoding String with name of original encoding,
+     * null for the default Charset
+     * @param encoding String with name of final encoding
+     * @return boolean whether ascii bytes can be digested as they are
+     */
+    public static boolean isAsciiCompatible(String orencoding, String encoding) {
+        String from = (orencoding != null) ? orencoding : Charset.defaultCharset().name();
+        if (!from.equals(encoding) || !Charset.isSupported(from)) {
+            return false;
+        }
+        String probe = "+-.0123456789aefin" + creturn + zeroscape;
+        return Arrays.equals(probe.getBytes(Charset.forName(from)),
+                probe.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * A new MessageDigest for an algorithm: the provider is looked up
+     * once per algorithm and every call clones the first instance.
+     * A MessageDigest that cannot be cloned is looked up on every call.
+     *
+     * @param algor String with the name of the algorithm
+     * @return MessageDigest in its initial state
+     * @throws NoSuchAlgorithmException
+     */
+    public static MessageDigest newDigest(String algor) throws NoSuchAlgorithmException {
+        MessageDigest prototype = prototypes.get(algor);
+        if (prototype == null) {
+            prototype = MessageDigest.getInstance(algor);
+            MessageDigest previous = prototypes.putIfAbsent(algor, prototype);
+            if (previous != null) {
+                prototype = previous;
+            }
+        }
+        try {
+            return (MessageDigest) prototype.clone();
+        } catch (CloneNotSupportedException err) {
+            return MessageDigest.getInstance(algor);
+        }
+    }
+
+    /**
+     * @param hsz integer number of bits of the digest to keep
+     * @return hsz, if it is one of UnfCons.HSZ_VALUES
+     * @throws IllegalArgumentException otherwise
+     */
+    public static int checkHsize(int hsz) {
+        for (int h : HSZ_VALUES) {
+            if (h == hsz) {
+                return hsz;
+            }
+        }
+        throw new IllegalArgumentException("hash size " + hsz + " is not one of "
+                + Arrays.toString(HSZ_VALUES));
+    }
+
+    /**
+     * Keeps the most significant bits of a digest
+     *
+     * @param hash byte array with the digest
+     * @param n integer number of bits to keep, a multiple of 8
+     * @return byte array with the first n/8 bytes of hash
+     */
+    public static byte[] truncateHash(byte[] hash, int n) {
+        if (n <= 0 || n % 8 != 0 || n / 8 > hash.length) {
+            throw new IllegalArgumentException("hash size " + n
+                    + " is not a multiple of 8 up to " + hash.length * 8);
+        }
+        return Arrays.copyOf(hash, n / 8);
+    }
+
     /**
      * 
      * @param in Transform byte array to remove zero trailing
@@ -123,6 +208,29 @@ public class UnfDigestUtils implements UnfCons {
 
     }
 
+    /**
+     * As eliminateZeroPadding, for the first ln bytes of in
+     *
+     * @param in byte array with room for one byte after the first ln
+     * @param ln number of bytes converted to the final encoding
+     * @param orln number of bytes in the original encoding
+     * @return number of bytes of in to keep
+     */
+    public static int eliminateZeroPadding(byte[] in, int ln, int orln) {
+        if (ln == orln) {
+            return ln;
+        }
+        int cnt = 0;
+        for (int k = (ln - 1); k >= 0 && in[k] == 0; k--) {
+            cnt++;
+        }
+        //leave one zero byte
+        if (cnt == 0) {
+            in[ln] = 0;
+        }
+        return ln - cnt + 1;
+    }
+
     /**
      * 
      * @param obj array of class Object
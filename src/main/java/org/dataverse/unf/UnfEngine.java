@@ -0,0 +1,767 @@
+// Copyright 2023 Dataverse Core Team <support@dataverse.org>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// SPDX-License-Identifier: Apache-2.0
+
+/**
+ * Description: Calculates the unf's of columns with a fixed configuration:
+ *              the unf version, the MessageDigest algorithm, the numbers
+ *              of digits and characters, the hash size and an optional
+ *              cache of the canonical bytes of String cells.
+ *
+ *              The configuration is set in the constructor and never
+ *              changes; every call creates its own digest objects and
+ *              returns its own UnfResult. An engine has no other state,
+ *              so one engine can be shared by any number of threads.
+ *              The static methods of UnfDigest and UNFUtil calculate
+ *              with the engine of UnfDigest.getEngine().
+ *
+ *              The columns of an UnfDataset are independent until their
+ *              unf's are combined; given an Executor, the engine
+ *              calculates them in parallel, with the same result,
+ *              starting with the columns of highest estimated cost.
+ *              The cache of String cells is not used in parallel: its
+ *              lookups take one lock, so the parallel columns would
+ *              take turns on it.
+ *              A single long column can be pipelined instead: blocks of
+ *              rows are normalized in parallel and digested in order.
+ *
+ * Usage:  UnfEngine engine = new UnfEngine(9, 128, 256);
+ *         UnfResult res = engine.unfResult(column, 0, column.length);
+ *         res.getUnf();     //UNF:6:N9,H256:...
+ *         engine.addUNFs(new String[]{res.getUnf(), other.getUnf()});
+ *         engine.unf(new UnfDataset().add(column).add(names), pool);
+ */
+package org.dataverse.unf;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+public final class UnfEngine implements UnfCons {
+
+    /** number of rows normalized by one task of a pipelined column */
+    static final int BLOCK_ROWS = 1 << 14;
+    /** maximum number of blocks of a pipelined column in flight */
+    static final int BLOCK_WINDOW = 4 * Runtime.getRuntime().availableProcessors();
+
+    /** the unf version */
+    private final String version;
+    /** the MessageDigest algorithm */
+    private final String mdalgor;
+    /** approximate with (ndigits-1) after decimal point*/
+    private final int ndigits;
+    /** approximate with cdigits number of characters */
+    private final int cdigits;
+    /** number of bits of the digest in the unf */
+    private final int hsize;
+    /** cache of the canonical bytes of String cells, or null */
+    private final UnfStringCache stringCache;
+
+    /**
+     * Constructor with the defaults in UnfCons
+     */
+    public UnfEngine() {
+        this(DEF_NDGTS, DEF_CDGTS, DEF_HSZ);
+    }
+
+    /**
+     * Constructor for unf version 6 with SHA-256
+     * @param ndigits integer significant digits including decimal point
+     * @param cdigits integer number of significant characters
+     * @param hsize integer number of bits of the digest
+     */
+    public UnfEngine(int ndigits, int cdigits, int hsize) {
+        this("6", SHA256, ndigits, cdigits, hsize, null);
+    }
+
+    /**
+     * Constructor
+     * @param version String with the unf version
+     * @param algor String UnfCons.SHA256 or UnfCons.SHA512_256
+     * @param ndigits integer significant digits including decimal point
+     * @param cdigits integer number of significant characters
+     * @param hsize integer number of bits of the digest, one of
+     * UnfCons.HSZ_VALUES
+     * @param cache UnfStringCache for the String cells of the calls
+     * without an Executor, or null for none
+     * @throws IllegalArgumentException for another algorithm or hash size
+     */
+    public UnfEngine(String version, String algor, int ndigits, int cdigits, int hsize,
+            UnfStringCache cache) {
+        if (!SHA256.equals(algor) && !SHA512_256.equals(algor)) {
+            throw new IllegalArgumentException("digest algorithm " + algor
+                    + " is not " + SHA256 + " or " + SHA512_256);
+        }
+        UnfDigest.dowarnings(ndigits, cdigits);
+        this.version = version;
+        this.mdalgor = algor;
+        this.ndigits = ndigits;
+        this.cdigits = cdigits;
+        this.hsize = UnfDigestUtils.checkHsize(hsize);
+        this.stringCache = cache;
+    }
+
+    /**
+     * @return String with the unf version
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * @return String with the MessageDigest algorithm
+     */
+    public String getDigestAlgorithm() {
+        return mdalgor;
+    }
+
+    /**
+     * @return integer significant digits including decimal point
+     */
+    public int getNdigits() {
+        return ndigits;
+    }
+
+    /**
+     * @return integer number of significant characters
+     */
+    public int getCdigits() {
+        return cdigits;
+    }
+
+    /**
+     * @return integer number of bits of the digest
+     */
+    public int getHsize() {
+        return hsize;
+    }
+
+    /**
+     * @return UnfStringCache for the String cells, or null
+     */
+    public UnfStringCache getStringCache() {
+        return stringCache;
+    }
+
+    /**
+     * Calculates the digest of a slice of an array of double
+     *
+     * @param obj one-dimensional array of double
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @return UnfResult with the digest of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public UnfResult unfResult(final double[] obj, int off, int len) throws
+            UnsupportedEncodingException, UnfException, IOException {
+        UnfDigest.checkSlice(obj.length, off, len);
+        UnfNumber<Double> unfno = new UnfNumber<Double>(mdalgor);
+        unfno.setHsize(hsize);
+        unfno.RUNF5(obj, off, len, ndigits, new ArrayList<Integer>(), new Character[64], new StringBuilder());
+        return result(ndigits, unfno.getHash());
+    }
+
+    /**
+     * Calculates the digest of a slice of an array of double as
+     * unfResult(obj, off, len), normalizing blocks of rows in parallel
+     * on executor; the blocks are digested in order by the calling thread
+     *
+     * @param obj one-dimensional array of double
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @param executor Executor for the blocks, e.g. a ForkJoinPool
+     * @return UnfResult with the digest of the column
+     * @throws IOException
+     */
+    public UnfResult unfResult(final double[] obj, int off, int len, Executor executor) throws
+            IOException, UnfException {
+        UnfDigest.checkSlice(obj.length, off, len);
+        return pipeline(ndigits, off, len, executor, (from, n) -> {
+            UnfNumber<Double> unfno = new UnfNumber<Double>(mdalgor);
+            return unfno.canonTable(obj, from, n, ndigits);
+        });
+    }
+
+    /**
+     * Calculates the unf's of a slice of an array of double at several
+     * numbers of digits, in one pass over the values
+     *
+     * @param obj one-dimensional array of double
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @param ndgs array of integer significant digits that include decimal point
+     * @return array of String with the unf of the column for each element of ndgs
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public String[] unf(final double[] obj, int off, int len, int[] ndgs) throws
+            UnsupportedEncodingException, UnfException, IOException {
+        UnfDigest.checkSlice(obj.length, off, len);
+        for (int ndg : ndgs) {
+            UnfDigest.dowarnings(ndg, cdigits);
+        }
+        UnfNumber<Double> unfno = new UnfNumber<Double>(mdalgor);
+        unfno.setHsize(hsize);
+        String[] b64 = unfno.RUNF5(obj, off, len, ndgs, new ArrayList<List<Integer>>(),
+                new ArrayList<StringBuilder>());
+        String[] res = new String[ndgs.length];
+        for (int i = 0; i < ndgs.length; ++i) {
+            res[i] = header(cdigits, ndgs[i], hsize) + b64[i];
+        }
+        return res;
+    }
+
+    /**
+     * Calculates the digest of a slice of an array of Number; BigDecimal
+     * or BigInteger values keep all their digits until they are rounded
+     *
+     * @param <T> Generic type that extends Number
+     * @param obj one-dimensional array of generic class T, null for missing values
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @return UnfResult with the digest of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public <T extends Number> UnfResult unfResult(final T[] obj, int off, int len) throws
+            UnsupportedEncodingException, UnfException, IOException {
+        UnfDigest.checkSlice(obj.length, off, len);
+        UnfNumber<T> unfno = new UnfNumber<T>(mdalgor);
+        unfno.setHsize(hsize);
+        unfno.RUNF5(obj, off, len, ndigits, new ArrayList<Integer>(), new Character[64], new StringBuilder());
+        return result(ndigits, unfno.getHash());
+    }
+
+    /**
+     * Calculates the digest of a slice of an array of long;
+     * Long.MAX_VALUE marks a missing value
+     *
+     * @param obj one-dimensional array of long
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @return UnfResult with the digest of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public UnfResult unfResult(final long[] obj, int off, int len) throws
+            UnsupportedEncodingException, UnfException, IOException {
+        UnfDigest.checkSlice(obj.length, off, len);
+        UnfNumber<Long> unfno = new UnfNumber<Long>(mdalgor);
+        unfno.setHsize(hsize);
+        unfno.RUNF5(obj, off, len, ndigits, new ArrayList<Integer>(), new Character[64], new StringBuilder());
+        return result(ndigits, unfno.getHash());
+    }
+
+    /**
+     * Calculates the digest of a slice of an array of int;
+     * Integer.MAX_VALUE marks a missing value
+     *
+     * @param obj one-dimensional array of int
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @return UnfResult with the digest of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public UnfResult unfResult(final int[] obj, int off, int len) throws
+            UnsupportedEncodingException, UnfException, IOException {
+        UnfDigest.checkSlice(obj.length, off, len);
+        UnfNumber<Integer> unfno = new UnfNumber<Integer>(mdalgor);
+        unfno.setHsize(hsize);
+        unfno.RUNF5(obj, off, len, ndigits, new ArrayList<Integer>(), new Character[64], new StringBuilder());
+        return result(ndigits, unfno.getHash());
+    }
+
+    /**
+     * Calculates the digest of a slice of an array of short;
+     * Short.MAX_VALUE marks a missing value
+     *
+     * @param obj one-dimensional array of short
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @return UnfResult with the digest of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public UnfResult unfResult(final short[] obj, int off, int len) throws
+            UnsupportedEncodingException, UnfException, IOException {
+        UnfDigest.checkSlice(obj.length, off, len);
+        UnfNumber<Short> unfno = new UnfNumber<Short>(mdalgor);
+        unfno.setHsize(hsize);
+        unfno.RUNF5(obj, off, len, ndigits, new ArrayList<Integer>(), new Character[64], new StringBuilder());
+        return result(ndigits, unfno.getHash());
+    }
+
+    /**
+     * Calculates the digest of a slice of an array of byte;
+     * Byte.MAX_VALUE marks a missing value
+     *
+     * @param obj one-dimensional array of byte
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @return UnfResult with the digest of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public UnfResult unfResult(final byte[] obj, int off, int len) throws
+            UnsupportedEncodingException, UnfException, IOException {
+        UnfDigest.checkSlice(obj.length, off, len);
+        UnfNumber<Byte> unfno = new UnfNumber<Byte>(mdalgor);
+        unfno.setHsize(hsize);
+        unfno.RUNF5(obj, off, len, ndigits, new ArrayList<Integer>(), new Character[64], new StringBuilder());
+        return result(ndigits, unfno.getHash());
+    }
+
+    /**
+     * Calculates the digest of a dictionary-encoded numeric column:
+     * cell k is dict[codes[k]], or a missing value if codes[k] is negative
+     *
+     * @param <T> Generic type that extends Number
+     * @param dict one-dimensional array of generic class T with the values
+     * @param codes array of integer with the index in dict of every cell
+     * @return UnfResult with the digest of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public <T extends Number> UnfResult unfResult(final T[] dict, final int[] codes) throws
+            UnsupportedEncodingException, UnfException, IOException {
+        UnfNumber<T> unfno = new UnfNumber<T>(mdalgor);
+        unfno.setHsize(hsize);
+        UnfByteTable table = unfno.canonTable(dict, ndigits);
+        unfno.RUNF5(table, codes, 0, codes.length, new ArrayList<Integer>(), new Character[64],
+                new StringBuilder());
+        return result(ndigits, unfno.getHash());
+    }
+
+    /**
+     * Calculates the digest of a slice of an array of boolean
+     *
+     * @param obj one-dimensional array of boolean
+     * @param off index of the first value in the column
+     * @param len number of values in the column
+     * @return UnfResult with the digest of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public UnfResult unfResult(final boolean[] obj, int off, int len) throws
+            UnsupportedEncodingException, IOException {
+        UnfDigest.checkSlice(obj.length, off, len);
+        UnfBoolean<Number> unfno = new UnfBoolean<Number>(mdalgor);
+        unfno.setHsize(hsize);
+        unfno.RUNF5(obj, off, len, new ArrayList<Integer>(), new Character[64], new StringBuilder());
+        return new UnfResult(version, DEF_CDGTS, DEF_NDGTS, hsize, unfno.getHash(), mdalgor);
+    }
+
+    /**
+     * Calculates the digest of an array of BitString
+     *
+     * @param obj one-dimensional array of BitString, null for missing values
+     * @return UnfResult with the digest of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public UnfResult unfResult(final BitString[] obj) throws
+            UnsupportedEncodingException, IOException {
+        int nrows = obj.length;
+        boolean[] miss = new boolean[nrows];
+        CharSequence[] cobj = new CharSequence[nrows];
+        for (int i = 0; i < nrows; i++) {
+            miss[i] = obj[i] == null;
+            cobj[i] = obj[i] != null ? obj[i].getBits() : null;
+        }
+        UnfBitfield<CharSequence> unfno = new UnfBitfield<CharSequence>(mdalgor);
+        unfno.setHsize(hsize);
+        unfno.RUNF5(cobj, miss, new ArrayList<Integer>(), new Character[64], new StringBuilder());
+        return new UnfResult(version, DEF_CDGTS, DEF_NDGTS, hsize, unfno.getHash(), mdalgor);
+    }
+
+    /**
+     * Calculates the digest of an array of CharSequence
+     *
+     * @param <T> Generic type that extends CharSequence
+     * @param obj one-dimensional array of generic class T, null for missing values
+     * @return UnfResult with the digest of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public <T extends CharSequence> UnfResult unfResult(final T[] obj) throws
+            UnsupportedEncodingException, UnfException, IOException {
+        UnfString<T> unfno = new UnfString<T>(mdalgor);
+        unfno.setHsize(hsize);
+        unfno.setCache(stringCache);
+        unfno.RUNF5((CharSequence[]) obj, UnfDigestUtils.isna(obj), cdigits,
+                new ArrayList<Integer>(), new Character[64], new StringBuilder());
+        return result(ndigits, unfno.getHash());
+    }
+
+    /**
+     * Calculates the digest of an array of CharSequence as
+     * unfResult(obj), normalizing blocks of rows in parallel on
+     * executor; the blocks are digested in order by the calling thread
+     *
+     * @param <T> Generic type that extends CharSequence
+     * @param obj one-dimensional array of generic class T
+     * @param executor Executor for the blocks, e.g. a ForkJoinPool
+     * @return UnfResult with the digest of the column
+     * @throws IOException
+     */
+    public <T extends CharSequence> UnfResult unfResult(final T[] obj, Executor executor) throws
+            IOException, UnfException {
+        return pipeline(ndigits, 0, obj.length, executor, (from, n) -> {
+            UnfString<T> unfno = new UnfString<T>(mdalgor);
+            return unfno.canonTable(obj, from, n, cdigits);
+        });
+    }
+
+    /**
+     * Calculates the digest of a dictionary-encoded character column:
+     * cell k is dict[codes[k]], or a missing value if codes[k] is negative
+     *
+     * @param <T> Generic type that extends CharSequence
+     * @param dict one-dimensional array of generic class T with the values
+     * @param codes array of integer with the index in dict of every cell
+     * @return UnfResult with the digest of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public <T extends CharSequence> UnfResult unfResult(final T[] dict, final int[] codes) throws
+            UnsupportedEncodingException, UnfException, IOException {
+        UnfString<T> unfno = new UnfString<T>(mdalgor);
+        unfno.setHsize(hsize);
+        UnfByteTable table = unfno.canonTable(dict, cdigits);
+        unfno.RUNF5(table, codes, 0, codes.length, new ArrayList<Integer>(), new Character[64],
+                new StringBuilder());
+        return result(ndigits, unfno.getHash());
+    }
+
+    /**
+     * Calculates the digest of a column of UTF-8 encoded strings given
+     * as bytes; cell k is data[offsets[k]] up to data[offsets[k + 1]]
+     *
+     * @param data byte array with the cells one after the other
+     * @param offsets integer array with the start of every cell and,
+     * as last element, the end of the last cell
+     * @param miss array of booleans for missing values, or null
+     * @return UnfResult with the digest of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public UnfResult unfResult(final byte[] data, final int[] offsets, final boolean[] miss) throws
+            UnsupportedEncodingException, UnfException, IOException {
+        UnfDigest.checkCells(data.length, offsets, miss);
+        UnfString<String> unfno = new UnfString<String>(mdalgor);
+        unfno.setHsize(hsize);
+        unfno.RUNF5(data, offsets, miss, cdigits, new ArrayList<Integer>(), new Character[64],
+                new StringBuilder());
+        return result(ndigits, unfno.getHash());
+    }
+
+    /**
+     * Calculates the digest of a column of strings read from Readers,
+     * one per cell, null for missing values; the Readers are not closed
+     *
+     * @param cells Iterable of Reader with the cells in order
+     * @return UnfResult with the digest of the column
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public UnfResult unfResult(final Iterable<? extends Reader> cells) throws
+            UnsupportedEncodingException, UnfException, IOException {
+        UnfString<String> unfno = new UnfString<String>(mdalgor);
+        unfno.setHsize(hsize);
+        unfno.RUNF5(cells, cdigits, new ArrayList<Integer>(), new Character[64], new StringBuilder());
+        return result(ndigits, unfno.getHash());
+    }
+
+    /**
+     * Calculates the digests of the columns of a data set, one after the other
+     *
+     * @param data UnfDataset with the columns
+     * @return array of UnfResult with the digest of every column, in order
+     * @throws IOException
+     */
+    public UnfResult[] unfResults(UnfDataset data) throws IOException, UnfException {
+        List<UnfDataset.Column> columns = data.getColumns();
+        UnfResult[] res = new UnfResult[columns.size()];
+        for (int k = 0; k < res.length; ++k) {
+            res[k] = columns.get(k).unfResult(this);
+        }
+        return res;
+    }
+
+    /**
+     * Calculates the digests of the columns of a data set in parallel,
+     * one task per column on executor; the results are the same as
+     * those of unfResults(data). The columns are submitted from the
+     * most to the least expensive, so that a long column does not
+     * start last and keep the other threads waiting for it. If a
+     * column fails, the columns not started yet are cancelled and its
+     * exception is thrown. The String cells are not cached, as in
+     * the pipelined unfResult(obj, executor).
+     *
+     * @param data UnfDataset with the columns
+     * @param executor Executor for the columns, e.g. a ForkJoinPool
+     * @return array of UnfResult with the digest of every column, in order
+     * @throws IOException
+     */
+    public UnfResult[] unfResults(UnfDataset data, Executor executor) throws
+            IOException, UnfException {
+        List<UnfDataset.Column> columns = data.getColumns();
+        final UnfEngine engine = (stringCache == null) ? this
+                : new UnfEngine(version, mdalgor, ndigits, cdigits, hsize, null);
+        List<CompletableFuture<UnfResult>> futures = new ArrayList<CompletableFuture<UnfResult>>();
+        for (int k = 0; k < columns.size(); ++k) {
+            futures.add(null);
+        }
+        for (int k : schedule(columns)) {
+            final UnfDataset.Column column = columns.get(k);
+            futures.set(k, CompletableFuture.supplyAsync(() -> {
+                try {
+                    return column.unfResult(engine);
+                } catch (IOException | UnfException ex) {
+                    throw new CompletionException(ex);
+                }
+            }, executor));
+        }
+        UnfResult[] res = new UnfResult[futures.size()];
+        try {
+            for (int k = 0; k < res.length; ++k) {
+                res[k] = join(futures.get(k));
+            }
+        } finally {
+            for (CompletableFuture<UnfResult> future : futures) {
+                future.cancel(false);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Orders the columns by decreasing estimated cost; columns of the
+     * same cost keep their order
+     *
+     * @param columns List of the columns of a data set
+     * @return List of the indexes of the columns, most expensive first
+     */
+    List<Integer> schedule(List<UnfDataset.Column> columns) {
+        final long[] costs = new long[columns.size()];
+        List<Integer> order = new ArrayList<Integer>();
+        for (int k = 0; k < costs.length; ++k) {
+            costs[k] = columns.get(k).cost(this);
+            order.add(k);
+        }
+        Collections.sort(order, (a, b) -> Long.compare(costs[b], costs[a]));
+        return order;
+    }
+
+    /**
+     * @param data UnfDataset with the columns
+     * @return String with the unf of the data set
+     * @throws IOException
+     */
+    public String unf(UnfDataset data) throws IOException, UnfException {
+        return addUNFs(unfs(unfResults(data)));
+    }
+
+    /**
+     * Calculates the columns in parallel as unfResults(data, executor);
+     * the unf is the same as that of unf(data)
+     *
+     * @param data UnfDataset with the columns
+     * @param executor Executor for the columns, e.g. a ForkJoinPool
+     * @return String with the unf of the data set
+     * @throws IOException
+     */
+    public String unf(UnfDataset data, Executor executor) throws IOException, UnfException {
+        return addUNFs(unfs(unfResults(data, executor)));
+    }
+
+    /**
+     * Combines the unf's of the columns of a data set; the unf's
+     * are sorted, so the order of the columns does not matter
+     *
+     * @param b64 String array with unf's
+     * @return String with the unf of the data set
+     * @throws UnsupportedEncodingException
+     * @throws IOException
+     */
+    public String addUNFs(String[] b64) throws
+            UnsupportedEncodingException, UnfException, IOException {
+        if (b64.length <= 0) {
+            return null;
+        } else if (b64.length <= 1) {
+            return b64[0];
+        }
+        List<String> combo = new ArrayList<String>();
+        for (String str : b64) {
+            String res[] = str.split(":");
+            if (res.length >= 3 && str.startsWith("UNF:")) {
+                combo.add(res[res.length - 1].trim());
+            } else {
+                combo.add(res[0].trim());
+            }
+        }
+        Collections.sort(combo);
+        String[] sortedb64 = combo.toArray(new String[combo.size()]);
+        UnfString<String> unfno = new UnfString<String>(mdalgor);
+        String res = unfno.RUNF5(sortedb64, UnfDigestUtils.isna(sortedb64), DEF_CDGTS,
+                new ArrayList<Integer>(), new Character[64], new StringBuilder());
+        return header(DEF_CDGTS, DEF_NDGTS, DEF_HSZ) + res;
+    }
+
+    /**
+     * @param results array of UnfResult
+     * @return array of String with the unf of every result
+     */
+    private static String[] unfs(UnfResult[] results) {
+        String[] res = new String[results.length];
+        for (int k = 0; k < res.length; ++k) {
+            res[k] = results[k].getUnf();
+        }
+        return res;
+    }
+
+    /**
+     * Normalizes blocks of BLOCK_ROWS rows on executor, at most
+     * BLOCK_WINDOW at a time, and feeds them to one MessageDigest in
+     * order. If a block fails, the blocks in flight are cancelled and
+     * its exception is thrown.
+     *
+     * @param ndg integer significant digits of the column
+     * @param off index of the first row
+     * @param len number of rows
+     * @param executor Executor for the blocks
+     * @param block Block with the canonical bytes of a range of rows
+     * @return UnfResult with the digest of the column
+     * @throws IOException
+     */
+    private UnfResult pipeline(int ndg, int off, int len, Executor executor, final Block block)
+            throws IOException, UnfException {
+        MessageDigest md;
+        try {
+            md = UnfDigestUtils.newDigest(mdalgor);
+            UnfTraceSink trace = UnfDigest.getTraceSink();
+            if (trace != null) {
+                md = new DigestBuffer(md, trace, "UnfEngine");
+            }
+        } catch (NoSuchAlgorithmException err) {
+            throw new RuntimeException(err.getMessage());
+        }
+        ArrayDeque<CompletableFuture<UnfByteTable>> window =
+                new ArrayDeque<CompletableFuture<UnfByteTable>>();
+        int next = off;
+        int end = off + len;
+        try {
+            while (next < end || !window.isEmpty()) {
+                while (next < end && window.size() < BLOCK_WINDOW) {
+                    final int from = next;
+                    final int n = Math.min(BLOCK_ROWS, end - next);
+                    window.add(CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return block.canonTable(from, n);
+                        } catch (IOException | UnfException ex) {
+                            throw new CompletionException(ex);
+                        }
+                    }, executor));
+                    next += n;
+                }
+                join(window.poll()).update(md);
+            }
+        } finally {
+            for (CompletableFuture<UnfByteTable> future : window) {
+                future.cancel(false);
+            }
+        }
+        return result(ndg, md.digest());
+    }
+
+    /**
+     * Waits for the result of a task and throws its exception, if any
+     *
+     * @param <T> type of the result
+     * @param future CompletableFuture with the result of a task
+     * @return the result of the task
+     * @throws IOException
+     */
+    static <T> T join(CompletableFuture<T> future) throws
+            IOException, UnfException {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof UnfException) {
+                throw (UnfException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * @param ndg integer significant digits of the column
+     * @param hash byte array with the whole digest
+     * @return UnfResult with the parameters of this engine
+     */
+    private UnfResult result(int ndg, byte[] hash) {
+        return new UnfResult(version, cdigits, ndg, hsize, hash, mdalgor);
+    }
+
+    /**
+     * @param cdg integer number of characters
+     * @param ndg integer significant digits
+     * @param hsz integer number of bits of the digest
+     * @return String with the unf up to the base64 encoding
+     */
+    private String header(int cdg, int ndg, int hsz) {
+        UnfClass signature = new UnfClass(cdg, ndg, hsz);
+        if (!SHA256.equals(mdalgor)) {
+            signature.addExtension(SHA512_256_EXT);
+        }
+        String extensions = signature.getExtensions();
+        if (extensions.length() > 0) {
+            extensions = ":" + extensions;
+        }
+        return "UNF:" + version + extensions + ":";
+    }
+
+    /**
+     * The canonical bytes of a range of rows of a column
+     */
+    private interface Block {
+
+        /**
+         * @param off index of the first row
+         * @param n number of rows
+         * @return UnfByteTable with an entry for each row
+         * @throws IOException
+         */
+        UnfByteTable canonTable(int off, int n) throws IOException, UnfException;
+    }
+}
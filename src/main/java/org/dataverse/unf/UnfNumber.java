@@ -16,11 +16,17 @@
 
 package org.dataverse.unf;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.logging.Level;
@@ -29,6 +35,13 @@ import java.util.logging.Logger;
 public class UnfNumber<T extends Number> implements UnfCons {
 
     private static Logger mLog = Logger.getLogger(UnfNumber.class.getName());
+
+    static {
+        if (!DEBUG) {
+            mLog.setLevel(Level.WARNING);
+        }
+    }
+
     /** the starting encoding */
     private String orencoding = null;
     /** the final encoding */
@@ -40,20 +53,31 @@ public class UnfNumber<T extends Number> implements UnfCons {
     /** the MessageDigest algorithm **/
     private String mdalgor = "SHA-256";
     private MessageDigest md = null;
+    /** number of bits of the digest kept */
+    private int hsize = DEF_HSZ;
+    /** the whole digest of the last column */
+    private byte[] hash = null;
+    /** rounds the values of Number sub-classes, reused for every value */
+    private RoundRoutines<T> rout = null;
+    /** rounds the values of primitive arrays, reused for every value */
+    private final RoundNumber rnd = new RoundNumber();
+    /** whether the encodings leave ascii bytes as they are, null until known */
+    private Boolean ascii = null;
+    /** converts the canonical bytes to encoding, null until needed */
+    private CharsetTranscoder transcoder = null;
+    /** sink of the bytes fed to md, or null */
+    private final UnfTraceSink trace = UnfDigest.getTraceSink();
 
     /**
      * Constructor
      */
     public UnfNumber() {
-        if (!DEBUG) {
-            mLog.setLevel(Level.WARNING);
-        }
         if (orencoding == null) {
             orencoding = textencoding;
         }
         try {
             //md5_init in Micah code
-            md = MessageDigest.getInstance(mdalgor);
+            md = new DigestBuffer(UnfDigestUtils.newDigest(mdalgor), trace, "UnfNumber");
         } catch (NoSuchAlgorithmException err) {
             throw new RuntimeException(err.getMessage());
         }
@@ -66,13 +90,13 @@ public class UnfNumber<T extends Number> implements UnfCons {
      * @exception NoSuchAlgorithmException
      */
     public UnfNumber(String algor) {
-        if (!DEBUG) {
-            mLog.setLevel(Level.WARNING);
+        if (orencoding == null) {
+            orencoding = textencoding;
         }
         mdalgor = algor;
         try {
             //another algor different form md5
-            md = MessageDigest.getInstance(algor);
+            md = new DigestBuffer(UnfDigestUtils.newDigest(algor), trace, "UnfNumber");
         } catch (NoSuchAlgorithmException err) {
             throw new RuntimeException(err.getMessage());
         }
@@ -116,6 +140,8 @@ public class UnfNumber<T extends Number> implements UnfCons {
      */
     public void setEncoding(String fenc) {
         encoding = fenc;
+        ascii = null;
+        transcoder = null;
     }
 
     /**
@@ -134,7 +160,7 @@ public class UnfNumber<T extends Number> implements UnfCons {
         MessageDigest mdm = null;
         try {
             //another algor different form md5
-            mdm = MessageDigest.getInstance(aa);
+            mdm = new DigestBuffer(UnfDigestUtils.newDigest(aa), trace, "UnfNumber");
             this.md = mdm;
         } catch (NoSuchAlgorithmException err) {
             throw new RuntimeException(err.getMessage());
@@ -150,6 +176,29 @@ public class UnfNumber<T extends Number> implements UnfCons {
         return nullbyte;
     }
 
+    /**
+     * @return integer with the number of bits of the digest kept
+     */
+    public int getHsize() {
+        return hsize;
+    }
+
+    /**
+     * @param hsz integer number of bits of the digest to keep,
+     * one of UnfCons.HSZ_VALUES
+     */
+    public void setHsize(int hsz) {
+        hsize = UnfDigestUtils.checkHsize(hsz);
+    }
+
+    /**
+     * @return byte array with the whole digest of the last
+     * column, before truncation, or null
+     */
+    public byte[] getHash() {
+        return (hash == null) ? null : hash.clone();
+    }
+
     /**
      *
      * @param x double
@@ -179,28 +228,366 @@ public class UnfNumber<T extends Number> implements UnfCons {
 
     public String RUNF5(final T[] v, int digits, List<Integer> result, Character[] base64, StringBuilder hex)//, String[] resultBase64)
             throws UnsupportedEncodingException, UnfException, IOException {
-        int nv = v.length;
-        double dub = 0;
+        return RUNF5(v, 0, v.length, digits, result, base64, hex);
+    }
+
+    /**
+     * Feeds a slice of an array of Number to the MessageDigest.
+     * BigDecimal and BigInteger values are rounded as they are,
+     * without conversion to double; null values are missing.
+     *
+     * @param v array of Number or sub-classes
+     * @param off index of the first value
+     * @param len number of values
+     * @param digits integer for precision arithmetic
+     * @param result List of Integer to store the bytes of the digest
+     * @param base64 array to store the characters of the base64 encoding
+     * @param hex StringBuilder to store the hexadecimal representation
+     * @return String with base64 encoding
+     */
+    public String RUNF5(final T[] v, int off, int len, int digits, List<Integer> result,
+            Character[] base64, StringBuilder hex)
+            throws UnsupportedEncodingException, UnfException, IOException {
         boolean miss = false;
-        int k = 0;
-        int [] v5bitsize = {128, 192, 256}; // TODO: is it supposed to be 192 rather than 196?
+        int end = off + len;
 
-        for (k = 0; k < nv; ++k) {
+        for (int k = off; k < end; ++k) {
             miss = (v[k] == null);
             //md5_append is called with UNF5
             md = UNF5(v[k], digits, md, miss);
         }
+        return finish(result, base64, hex);
+    }
+
+    /**
+     * Writes the canonical bytes of every entry of a dictionary once;
+     * a null entry is a missing value
+     *
+     * @param dict array of class T with the values of a column
+     * @param digits integer for precision arithmetic
+     * @return UnfByteTable with an entry for each element of dict
+     */
+    public UnfByteTable canonTable(final T[] dict, int digits)
+            throws UnsupportedEncodingException, UnfException, IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int[] offsets = new int[dict.length + 1];
+        for (int k = 0; k < dict.length; ++k) {
+            offsets[k] = data.size();
+            byte[] bint = canonBytes(dict[k], digits);
+            if (bint != null) {
+                data.write(bint, 0, bint.length);
+            }
+        }
+        offsets[dict.length] = data.size();
+        return new UnfByteTable(data.toByteArray(), offsets);
+    }
+
+    /**
+     * Writes the canonical bytes of a slice of a primitive array of
+     * double, an entry for each value, as RUNF5 feeds them to the
+     * MessageDigest
+     *
+     * @param v array of double
+     * @param off index of the first value
+     * @param len number of values
+     * @param digits integer for precision arithmetic
+     * @return UnfByteTable with an entry for each value of the slice
+     */
+    public UnfByteTable canonTable(final double[] v, int off, int len, int digits)
+            throws UnsupportedEncodingException, IOException {
+        byte[] canon = new byte[RoundNumber.maxBytes(digits)];
+        boolean ascii = isAsciiEncoding();
+        byte[] data = new byte[16 * len + canon.length];
+        int[] offsets = new int[len + 1];
+        int n = 0;
+        for (int j = 0; j < len; ++j) {
+            offsets[j] = n;
+            int sz = rnd.GenroundBytes(v[off + j], digits, canon, 0);
+            if (nullbyte) {
+                canon[sz++] = (byte) zeroscape;
+            }
+            byte[] bint = canon;
+            if (!ascii) {
+                bint = encode(new String(canon, 0, sz, StandardCharsets.US_ASCII));
+                sz = (bint == null) ? 0 : bint.length;
+            }
+            if (n + sz > data.length) {
+                data = Arrays.copyOf(data, Math.max(n + sz, 2 * data.length));
+            }
+            System.arraycopy(bint, 0, data, n, sz);
+            n += sz;
+        }
+        offsets[len] = n;
+        return new UnfByteTable(data, offsets);
+    }
+
+    /**
+     * Feeds a slice of a dictionary-encoded column to the MessageDigest,
+     * the entry of dict for each code; a negative code is a missing
+     * value. The result is the same as for the expanded column.
+     *
+     * @param dict UnfByteTable with the canonical bytes of the dictionary
+     * @param codes array of integer with the indexes in dict
+     * @param off index of the first code
+     * @param len number of codes
+     * @param result List of Integer to store the bytes of the digest
+     * @param base64 array to store the characters of the base64 encoding
+     * @param hex StringBuilder to store the hexadecimal representation
+     * @return String with base64 encoding
+     */
+    public String RUNF5(final UnfByteTable dict, final int[] codes, int off, int len,
+            List<Integer> result, Character[] base64, StringBuilder hex) {
+        dict.update(md, codes, off, len);
+        return finish(result, base64, hex);
+    }
+
+    /**
+     * @param obj value of class T, null for a missing value
+     * @param digits integer for precision arithmetic
+     * @return byte array that UNF5 feeds to the MessageDigest for obj
+     */
+    private byte[] canonBytes(final T obj, int digits)
+            throws UnsupportedEncodingException, UnfException, IOException {
+        if (obj == null) {
+            return UnfTokens.MISSING;
+        }
+        if (!(obj instanceof BigDecimal) && !(obj instanceof BigInteger) && isAsciiEncoding()) {
+            byte[] token = UnfTokens.special(obj.doubleValue());
+            if (token != null) {
+                return token;
+            }
+        }
+        if (rout == null) {
+            rout = new RoundRoutines<T>(digits, false, currentlocale);
+        }
+        return encode(rout.Genround(obj, digits, false));
+    }
+
+    /**
+     * Feeds a slice of a primitive array of double to the MessageDigest.
+     * Values are read in place, so no boxed copy of the column is built;
+     * the result is the same as for the equivalent array of Double.
+     *
+     * @param v array of double
+     * @param off index of the first value
+     * @param len number of values
+     * @param digits integer for precision arithmetic
+     * @param result List of Integer to store the bytes of the digest
+     * @param base64 array to store the characters of the base64 encoding
+     * @param hex StringBuilder to store the hexadecimal representation
+     * @return String with base64 encoding
+     */
+    public String RUNF5(final double[] v, int off, int len, int digits, List<Integer> result,
+            Character[] base64, StringBuilder hex)
+            throws UnsupportedEncodingException, UnfException, IOException {
+        byte[] canon = new byte[RoundNumber.maxBytes(digits)];
+        boolean ascii = isAsciiEncoding();
+        int end = off + len;
+        for (int k = off; k < end; ++k) {
+            int sz = rnd.GenroundBytes(v[k], digits, canon, 0);
+            md = UNF5(canon, sz, md, ascii);
+        }
+        return finish(result, base64, hex);
+    }
+
+    /**
+     * Feeds a slice of a primitive array of double to one MessageDigest
+     * for each number of digits in a single pass: every value is parsed
+     * once and rounded at each number of digits.
+     *
+     * @param v array of double
+     * @param off index of the first value
+     * @param len number of values
+     * @param digits array of integer for precision arithmetic
+     * @param results List to receive, for each element of digits,
+     * the List of Integer with the bytes of the digest
+     * @param hexes List to receive, for each element of digits,
+     * the hexadecimal representation
+     * @return array of String with base64 encoding, one for each element of digits
+     */
+    public String[] RUNF5(final double[] v, int off, int len, int[] digits,
+            List<List<Integer>> results, List<StringBuilder> hexes)
+            throws UnsupportedEncodingException, UnfException, IOException {
+        int nd = digits.length;
+        MessageDigest[] mds = new MessageDigest[nd];
+        byte[][] canons = new byte[nd][];
+        int[] ends = new int[nd];
+        for (int i = 0; i < nd; ++i) {
+            try {
+                mds[i] = new DigestBuffer(UnfDigestUtils.newDigest(mdalgor), trace, "UnfNumber");
+            } catch (NoSuchAlgorithmException err) {
+                throw new RuntimeException(err.getMessage());
+            }
+            canons[i] = new byte[RoundNumber.maxBytes(digits[i])];
+        }
+        boolean ascii = isAsciiEncoding();
+        int end = off + len;
+        for (int k = off; k < end; ++k) {
+            rnd.GenroundBytes(v[k], digits, canons, ends);
+            for (int i = 0; i < nd; ++i) {
+                mds[i] = UNF5(canons[i], ends[i], mds[i], ascii);
+            }
+        }
+        String[] res = new String[nd];
+        for (int i = 0; i < nd; ++i) {
+            List<Integer> result = new ArrayList<Integer>();
+            StringBuilder hex = new StringBuilder();
+            res[i] = finish(mds[i], result, new Character[64], hex);
+            results.add(result);
+            hexes.add(hex);
+        }
+        return res;
+    }
+
+    /**
+     * Feeds a slice of a primitive array of long to the MessageDigest.
+     * Long.MAX_VALUE marks a missing value and is digested as NaN.
+     *
+     * @param v array of long
+     * @param off index of the first value
+     * @param len number of values
+     * @param digits integer for precision arithmetic
+     * @param result List of Integer to store the bytes of the digest
+     * @param base64 array to store the characters of the base64 encoding
+     * @param hex StringBuilder to store the hexadecimal representation
+     * @return String with base64 encoding
+     */
+    public String RUNF5(final long[] v, int off, int len, int digits, List<Integer> result,
+            Character[] base64, StringBuilder hex)
+            throws UnsupportedEncodingException, UnfException, IOException {
+        byte[] canon = new byte[RoundNumber.maxBytes(digits)];
+        boolean ascii = isAsciiEncoding();
+        int end = off + len;
+        for (int k = off; k < end; ++k) {
+            int sz = (v[k] == Long.MAX_VALUE)
+                    ? rnd.GenroundBytes(Double.NaN, digits, canon, 0)
+                    : rnd.GenroundBytes(v[k], digits, canon, 0);
+            md = UNF5(canon, sz, md, ascii);
+        }
+        return finish(result, base64, hex);
+    }
+
+    /**
+     * Feeds a slice of a primitive array of int to the MessageDigest.
+     * Integer.MAX_VALUE marks a missing value and is digested as NaN.
+     *
+     * @param v array of int
+     * @param off index of the first value
+     * @param len number of values
+     * @param digits integer for precision arithmetic
+     * @param result List of Integer to store the bytes of the digest
+     * @param base64 array to store the characters of the base64 encoding
+     * @param hex StringBuilder to store the hexadecimal representation
+     * @return String with base64 encoding
+     */
+    public String RUNF5(final int[] v, int off, int len, int digits, List<Integer> result,
+            Character[] base64, StringBuilder hex)
+            throws UnsupportedEncodingException, UnfException, IOException {
+        byte[] canon = new byte[RoundNumber.maxBytes(digits)];
+        boolean ascii = isAsciiEncoding();
+        int end = off + len;
+        for (int k = off; k < end; ++k) {
+            int sz = (v[k] == Integer.MAX_VALUE)
+                    ? rnd.GenroundBytes(Double.NaN, digits, canon, 0)
+                    : rnd.GenroundBytes((long) v[k], digits, canon, 0);
+            md = UNF5(canon, sz, md, ascii);
+        }
+        return finish(result, base64, hex);
+    }
+
+    /**
+     * Feeds a slice of a primitive array of short to the MessageDigest,
+     * looking up the bytes of each value in RoundNumber.shortTable.
+     * Short.MAX_VALUE marks a missing value and is digested as NaN.
+     *
+     * @param v array of short
+     * @param off index of the first value
+     * @param len number of values
+     * @param digits integer for precision arithmetic
+     * @param result List of Integer to store the bytes of the digest
+     * @param base64 array to store the characters of the base64 encoding
+     * @param hex StringBuilder to store the hexadecimal representation
+     * @return String with base64 encoding
+     */
+    public String RUNF5(final short[] v, int off, int len, int digits, List<Integer> result,
+            Character[] base64, StringBuilder hex)
+            throws UnsupportedEncodingException, UnfException, IOException {
+        int end = off + len;
+        if (isAsciiEncoding()) {
+            UnfByteTable table = RoundNumber.shortTable(digits);
+            for (int k = off; k < end; ++k) {
+                table.update(md, v[k] & 0xFFFF);
+            }
+        } else {
+            byte[] canon = new byte[RoundNumber.maxBytes(digits)];
+            for (int k = off; k < end; ++k) {
+                int sz = (v[k] == Short.MAX_VALUE)
+                        ? rnd.GenroundBytes(Double.NaN, digits, canon, 0)
+                        : rnd.GenroundBytes((long) v[k], digits, canon, 0);
+                md = UNF5(canon, sz, md, false);
+            }
+        }
+        return finish(result, base64, hex);
+    }
+
+    /**
+     * Feeds a slice of a primitive array of byte to the MessageDigest,
+     * looking up the bytes of each value in RoundNumber.byteTable.
+     * Byte.MAX_VALUE marks a missing value and is digested as NaN.
+     *
+     * @param v array of byte
+     * @param off index of the first value
+     * @param len number of values
+     * @param digits integer for precision arithmetic
+     * @param result List of Integer to store the bytes of the digest
+     * @param base64 array to store the characters of the base64 encoding
+     * @param hex StringBuilder to store the hexadecimal representation
+     * @return String with base64 encoding
+     */
+    public String RUNF5(final byte[] v, int off, int len, int digits, List<Integer> result,
+            Character[] base64, StringBuilder hex)
+            throws UnsupportedEncodingException, UnfException, IOException {
+        int end = off + len;
+        if (isAsciiEncoding()) {
+            UnfByteTable table = RoundNumber.byteTable(digits);
+            for (int k = off; k < end; ++k) {
+                table.update(md, v[k] & 0xFF);
+            }
+        } else {
+            byte[] canon = new byte[RoundNumber.maxBytes(digits)];
+            for (int k = off; k < end; ++k) {
+                int sz = (v[k] == Byte.MAX_VALUE)
+                        ? rnd.GenroundBytes(Double.NaN, digits, canon, 0)
+                        : rnd.GenroundBytes((long) v[k], digits, canon, 0);
+                md = UNF5(canon, sz, md, false);
+            }
+        }
+        return finish(result, base64, hex);
+    }
+
+    /**
+     * Completes the digest and encodes the most significant bytes
+     *
+     * @param result List of Integer to store the bytes of the digest
+     * @param base64 array to store the characters of the base64 encoding
+     * @param hex StringBuilder to store the hexadecimal representation
+     * @return String with base64 encoding
+     */
+    private String finish(List<Integer> result, Character[] base64, StringBuilder hex) {
+        return finish(md, result, base64, hex);
+    }
+
+    private String finish(MessageDigest md, List<Integer> result, Character[] base64, StringBuilder hex) {
         /**produces, by default, 16 byte digest: equivalent to md5_finish**/
-        byte[] hash = md.digest();
+        hash = md.digest();
         md.reset();
-        byte[] v5hash = truncateHash(hash,v5bitsize[0]);
+        byte[] v5hash = UnfDigestUtils.truncateHash(hash, hsize);
         byte[] inthash = new byte[v5hash.length];
-        for (k = 0; k < v5hash.length; ++k) {
+        for (int k = 0; k < v5hash.length; ++k) {
             int h = (int) ((v5hash[k] & 0xFF));
             inthash[k] = (byte) h;
             result.add((Integer) (h + 0));
         }
-        Integer[] res = result.toArray(new Integer[16]);
 
         //make sure is in big-endian order
         mLog.finer("Base64 encoding in BIG-ENDIAN");
@@ -220,15 +607,6 @@ public class UnfNumber<T extends Number> implements UnfCons {
         return tobase64;
     }
 
-    //TODO: this was cut&pasted from UnfString refactoring need to be done
-    byte[] truncateHash(byte[] hash,int n){
-        int bits = n/8;
-        byte[] rhash = new byte[bits];
-        for (int x=0;x<bits;x++){
-            rhash[x] = hash[x];
-        }
-        return rhash;
-    }
 
     /**
      *  Feeds the bytes of a String to MessageDigest algorithm
@@ -242,63 +620,107 @@ public class UnfNumber<T extends Number> implements UnfCons {
      */
     public MessageDigest UNF5(final T obj, int digits, MessageDigest previous, boolean miss)
             throws UnsupportedEncodingException, UnfException, IOException {
-        if (!miss) {
-            RoundRoutines<T> rout = new RoundRoutines<T>(digits, false, currentlocale);
+        byte[] bint = canonBytes(miss ? null : obj, digits);
+        if (bint != null) {
+            previous.update(bint);
+        }
+        return previous;
+    }
 
-            String tmps = rout.Genround(obj, digits, false);
+    /**
+     * Feeds the canonical form of a number, as written by
+     * RoundNumber.GenroundBytes, to MessageDigest algorithm
+     *
+     * @param canon byte array with the canonical form and
+     * room for the null byte
+     * @param sz number of bytes in canon
+     * @param previous MessageDigest
+     * @param ascii boolean whether the encodings leave ascii bytes as they are
+     * @return MessageDigest after updating with canon
+     * @throws UnsupportedEncodingException
+     */
+    MessageDigest UNF5(byte[] canon, int sz, MessageDigest previous, boolean ascii)
+            throws UnsupportedEncodingException, IOException {
+        if (nullbyte) {
+            canon[sz++] = (byte) zeroscape;
+        }
+        if (ascii) {
+            previous.update(canon, 0, sz);
+            return previous;
+        }
+        return feed(new String(canon, 0, sz, StandardCharsets.US_ASCII), previous);
+    }
 
-            if (tmps == null) {
-                mLog.severe("UNF3: Genround returns null");
-                return previous;
-            } else {
-                mLog.finer("UNF3: Genround: " + tmps);
-            }
-            /** add the null byte */
-            int sz = tmps.length();
-            if (nullbyte && !(tmps.charAt(sz - 1) == zeroscape)) {
-                tmps += zeroscape;
-            }
-            String dec[] = new String[2];
-            dec[FINAL_ENC] = encoding;
-            dec[ORG_ENC] = (orencoding != null) ? orencoding : Charset.defaultCharset().name();
-            byte bt[] = null;
-            if (orencoding != null) {
-                bt = tmps.getBytes(orencoding);
-            } else {
-                bt = tmps.getBytes();
-            }
-            String tmp = "";
+    /**
+     * @return boolean whether canonical bytes can be digested as they are
+     */
+    private boolean isAsciiEncoding() {
+        if (ascii == null) {
+            ascii = UnfDigestUtils.isAsciiCompatible(orencoding, encoding);
+        }
+        return ascii;
+    }
 
-            byte[] tmpu = null;
+    /**
+     * Encodes the output of Genround and updates the MessageDigest
+     *
+     * @param tmps String with the canonical form of a number
+     * @param previous MessageDigest
+     * @return MessageDigest after updating with tmps
+     * @throws UnsupportedEncodingException
+     */
+    private MessageDigest feed(String tmps, MessageDigest previous)
+            throws UnsupportedEncodingException, IOException {
+        byte[] bint = encode(tmps);
+        if (bint != null) {
+            previous.update(bint);
+        }
+        return previous;
+    }
 
+    /**
+     * Encodes the output of Genround with the null byte
+     *
+     * @param tmps String with the canonical form of a number
+     * @return byte array to feed the MessageDigest, or null
+     * @throws UnsupportedEncodingException
+     */
+    private byte[] encode(String tmps)
+            throws UnsupportedEncodingException, IOException {
+        if (tmps == null) {
+            mLog.severe("UNF3: Genround returns null");
+            return null;
+        }
+        /** add the null byte */
+        int sz = tmps.length();
+        if (nullbyte && !(tmps.charAt(sz - 1) == zeroscape)) {
+            tmps += zeroscape;
+        }
+        byte bt[] = null;
+        if (orencoding != null) {
+            bt = tmps.getBytes(orencoding);
+        } else {
+            bt = tmps.getBytes();
+        }
 
-            tmpu = UtilsConverter.byteConverter(bt, dec);
+        byte[] tmpu = null;
 
-            if (tmpu == null) {
-                mLog.severe("UNF3: CanonalizeUnicode returns null");
-                return previous;
-            }
 
-            byte[] bint = tmpu;
-            if (nullbyte) {
-                bint = UnfDigestUtils.eliminateZeroPadding(tmpu, bt);
-            }
-            String tmp0 = "";
-            for (int n = 0; n < bint.length; ++n) {
-                tmp0 = tmp0 + "\t" + bint[n];
-            }
-            mLog.finer("after " + tmp0);
-            previous.update(bint);
+        if (transcoder == null) {
+            String from = (orencoding != null) ? orencoding : Charset.defaultCharset().name();
+            transcoder = new CharsetTranscoder(from, encoding);
         }
+        tmpu = transcoder.convert(bt);
 
-        if (miss) {
-            byte[] tpu = UtilsConverter.getBytes(missv, null);
-
-            previous.update(tpu);
+        if (tmpu == null) {
+            mLog.severe("UNF3: CanonalizeUnicode returns null");
+            return null;
         }
 
-        return previous;
+        byte[] bint = tmpu;
+        if (nullbyte) {
+            bint = UnfDigestUtils.eliminateZeroPadding(tmpu, bt);
+        }
+        return bint;
     }
 }
-   
-   
@@ -0,0 +1,152 @@
+// Copyright 2023 Dataverse Core Team <support@dataverse.org>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// SPDX-License-Identifier: Apache-2.0
+
+/**
+ * Description: The whole digest of one column with the parameters of
+ *              its unf. The unf for any hash size in UnfCons.HSZ_VALUES
+ *              is a truncation of the same digest, so asking for a
+ *              longer fingerprint does not hash the column again.
+ *
+ * Usage:  UnfResult res = UnfDigest.unfResult(column, 0, column.length);
+ *         res.getUnf();     //UNF:6:... with 128 bits
+ *         res.getUnf(256);  //UNF:6:H256:... with 256 bits
+ */
+package org.dataverse.unf;
+
+public class UnfResult implements UnfCons {
+
+    /** the unf version */
+    private final String version;
+    /** approximate with cdigits number of characters */
+    private final int cdigits;
+    /** approximate with (ndigits-1) after decimal point*/
+    private final int ndigits;
+    /** number of bits of the digest for getUnf() */
+    private final int hsize;
+    /** the whole digest */
+    private final byte[] hash;
+    /** the MessageDigest algorithm of hash */
+    private final String mdalgor;
+
+    /**
+     * Constructor
+     * @param version String with the unf version
+     * @param cdigits integer with number of characters
+     * @param ndigits integer with number decimal digits
+     * @param hsize integer with the default number of bits of the digest
+     * @param hash byte array with the whole digest
+     */
+    public UnfResult(String version, int cdigits, int ndigits, int hsize, byte[] hash) {
+        this(version, cdigits, ndigits, hsize, hash, SHA256);
+    }
+
+    /**
+     * Constructor
+     * @param version String with the unf version
+     * @param cdigits integer with number of characters
+     * @param ndigits integer with number decimal digits
+     * @param hsize integer with the default number of bits of the digest
+     * @param hash byte array with the whole digest
+     * @param mdalgor String with the MessageDigest algorithm of hash
+     */
+    public UnfResult(String version, int cdigits, int ndigits, int hsize, byte[] hash,
+            String mdalgor) {
+        this.version = version;
+        this.cdigits = cdigits;
+        this.ndigits = ndigits;
+        this.hsize = hsize;
+        this.hash = hash.clone();
+        this.mdalgor = mdalgor;
+    }
+
+    /**
+     * @return String with the MessageDigest algorithm of the digest
+     */
+    public String getDigestAlgorithm() {
+        return mdalgor;
+    }
+
+    /**
+     * @return integer with the default number of bits of the digest
+     */
+    public int getHsize() {
+        return hsize;
+    }
+
+    /**
+     * @return byte array with the whole digest
+     */
+    public byte[] getHash() {
+        return hash.clone();
+    }
+
+    /**
+     * @return String with the unf for the default hash size
+     */
+    public String getUnf() {
+        return getUnf(hsize);
+    }
+
+    /**
+     * @param hsz integer number of bits of the digest
+     * @return String with the unf, including the H extension
+     * if hsz is not UnfCons.DEF_HSZ
+     */
+    public String getUnf(int hsz) {
+        UnfClass signature = new UnfClass(cdigits, ndigits, hsz);
+        if (!SHA256.equals(mdalgor)) {
+            signature.addExtension(SHA512_256_EXT);
+        }
+        String extensions = signature.getExtensions();
+        if (extensions.length() > 0) {
+            extensions = ":" + extensions;
+        }
+        return "UNF:" + version + extensions + ":" + getBase64(hsz);
+    }
+
+    /**
+     * @return array of String with the unf for every hash size
+     * in UnfCons.HSZ_VALUES
+     */
+    public String[] getUnfs() {
+        String[] res = new String[HSZ_VALUES.length];
+        for (int k = 0; k < res.length; ++k) {
+            res[k] = getUnf(HSZ_VALUES[k]);
+        }
+        return res;
+    }
+
+    /**
+     * @param hsz integer number of bits of the digest
+     * @return String with the base64 encoding of the first hsz bits
+     */
+    public String getBase64(int hsz) {
+        return Base64Encoding.tobase64(UnfDigestUtils.truncateHash(hash, hsz), false);
+    }
+
+    /**
+     * @param hsz integer number of bits of the digest
+     * @return String with the hexadecimal representation of the first hsz bits
+     */
+    public String getHex(int hsz) {
+        return UtilsConverter.getHexStrng(UnfDigestUtils.truncateHash(hash, hsz));
+    }
+
+    @Override
+    public String toString() {
+        return getUnf();
+    }
+}
@@ -16,9 +16,19 @@
 
 package org.dataverse.unf;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.logging.Level;
@@ -27,6 +37,13 @@ import java.util.logging.Logger;
 public class UnfString<T extends CharSequence> implements UnfCons {
 
     private static Logger mLog = Logger.getLogger(UnfString.class.getName());
+
+    static {
+        if (!DEBUG) {
+            mLog.setLevel(Level.WARNING);
+        }
+    }
+
     /** the staring encoding */
     private String orencoding = null;
     /** the final encoding */
@@ -36,20 +53,39 @@ public class UnfString<T extends CharSequence> implements UnfCons {
     /** the MessageDigest algorithm **/
     private String mdalgor = "SHA-256";//mdalgorithm;
     private MessageDigest md = null;
+    /** number of bits of the digest kept */
+    private int hsize = DEF_HSZ;
+    /** the whole digest of the last column */
+    private byte[] hash = null;
+    /** sink of the bytes fed to md, or null */
+    private final UnfTraceSink trace = UnfDigest.getTraceSink();
+    /** writes the canonical form of the cells */
+    private final RoundString rstr = new RoundString(nullbyte);
+    /** encodes the canonical form with orencoding */
+    private CharsetEncoder encoder = null;
+    private String encoderName = null;
+    /** converts the bytes from orencoding to encoding */
+    private CharsetTranscoder transcoder = null;
+    /** the bytes of the last encode */
+    private byte[] encoded = null;
+    /** optional cache of canonical bytes of cells */
+    private UnfStringCache cache = null;
+    /** configuration of the canonical bytes in the cache, for cacheDigits */
+    private String cacheConf = null;
+    private int cacheDigits = -1;
+    /** reusable buffer with the encoded bytes */
+    private ByteBuffer bytes = ByteBuffer.allocate(4 * (DEF_CDGTS + 2));
 
     /**
      * Constructor
      */
     public UnfString() {
-        if (!DEBUG) {
-            mLog.setLevel(Level.WARNING);
-        }
         if (orencoding == null) {
             orencoding = textencoding;
         }
         try {
             //md5_init in Micah code
-            md = MessageDigest.getInstance(mdalgor);
+            md = new DigestBuffer(UnfDigestUtils.newDigest(mdalgor), trace, "UnfString");
         } catch (NoSuchAlgorithmException err) {
             throw new RuntimeException(err.getMessage());
         }
@@ -62,13 +98,13 @@ public class UnfString<T extends CharSequence> implements UnfCons {
      * @exception NoSuchAlgorithmException
      */
     public UnfString(String algor) {
-        if (!DEBUG) {
-            mLog.setLevel(Level.WARNING);
+        if (orencoding == null) {
+            orencoding = textencoding;
         }
         mdalgor = algor;
         try {
             //another algor different form md5
-            md = MessageDigest.getInstance(algor);
+            md = new DigestBuffer(UnfDigestUtils.newDigest(algor), trace, "UnfString");
         } catch (NoSuchAlgorithmException err) {
             throw new RuntimeException(err.getMessage());
         }
@@ -113,6 +149,23 @@ public class UnfString<T extends CharSequence> implements UnfCons {
      */
     public void setEncoding(String fenc) {
         encoding = fenc;
+        transcoder = null;
+        cacheConf = null;
+    }
+
+    /**
+     * @return UnfStringCache with the canonical bytes of cells, or null
+     */
+    public UnfStringCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @param cache UnfStringCache to keep the canonical bytes of String
+     * cells not longer than the number of characters, or null for none
+     */
+    public void setCache(UnfStringCache cache) {
+        this.cache = cache;
     }
 
     /**
@@ -131,7 +184,7 @@ public class UnfString<T extends CharSequence> implements UnfCons {
         MessageDigest mdm = null;
         try {
             //another algor different form md5
-            mdm = MessageDigest.getInstance(aa);
+            mdm = new DigestBuffer(UnfDigestUtils.newDigest(aa), trace, "UnfString");
             this.md = mdm;
         } catch (NoSuchAlgorithmException err) {
             throw new RuntimeException(err.getMessage());
@@ -147,6 +200,29 @@ public class UnfString<T extends CharSequence> implements UnfCons {
         return nullbyte;
     }
 
+    /**
+     * @return integer with the number of bits of the digest kept
+     */
+    public int getHsize() {
+        return hsize;
+    }
+
+    /**
+     * @param hsz integer number of bits of the digest to keep,
+     * one of UnfCons.HSZ_VALUES
+     */
+    public void setHsize(int hsz) {
+        hsize = UnfDigestUtils.checkHsize(hsz);
+    }
+
+    /**
+     * @return byte array with the whole digest of the last
+     * column, before truncation, or null
+     */
+    public byte[] getHash() {
+        return (hash == null) ? null : hash.clone();
+    }
+
     /**
      * Feeds the elements of v to MessageDigest and updates it
      *
@@ -162,13 +238,9 @@ public class UnfString<T extends CharSequence> implements UnfCons {
             throws UnsupportedEncodingException, UnfException {
 
         int nv = v.length;
-
-        int [] v5bitsize = {128, 192, 256}; // TODO: is it supposed to be 192 rather than 196?
         int k = 0;
         for (k = 0; k < nv; ++k) {
             //md5_append is called with UNF3
-            mLog.finer("" + v[k] + ";");
-            mLog.finer(digits + ";" + md + ";");
             boolean m;
             if (miss == null) {
                 md = UNF3(v[k], digits, md, false);
@@ -176,16 +248,214 @@ public class UnfString<T extends CharSequence> implements UnfCons {
                 md = UNF3(v[k], digits, md, (boolean) miss[k]);
             }
         }
+        return finish(result, base64, hex);
+    }
+
+    /**
+     * Feeds a column of cells read from Readers to the MessageDigest;
+     * a null Reader is a missing value. Only the characters that the
+     * canonical form needs are kept, so a cell does not have to fit in
+     * a String. The Readers are not closed.
+     *
+     * @param cells Iterable of Reader with the cells in order
+     * @param digits int with the number of characters to keep
+     * @param result List of Integer to store the bytes of the digest
+     * @param base64 array to store the characters of the base64 encoding
+     * @param hex StringBuilder to store the hexadecimal representation
+     * @return String with base64 encoding
+     * @throws IOException
+     */
+    public String RUNF5(final Iterable<? extends Reader> cells, int digits, List<Integer> result,
+            Character[] base64, StringBuilder hex)
+            throws IOException, UnfException {
+        for (Reader cell : cells) {
+            if (cell == null) {
+                md.update(UnfTokens.MISSING);
+            } else {
+                update(rstr.normalize(cell, digits, nullbyte));
+            }
+        }
+        return finish(result, base64, hex);
+    }
+
+    /**
+     * Feeds a column of UTF-8 encoded cells to the MessageDigest;
+     * cell k is data[offsets[k]] up to data[offsets[k + 1]]. When the
+     * encodings are UTF-8 the cells are truncated on the bytes and
+     * digested in place; otherwise, or if a cell is not well-formed
+     * UTF-8, the cell is decoded as new String(bytes, UTF-8) does.
+     * Either way the digest is the one of the array of decoded Strings.
+     *
+     * @param data byte array with the cells one after the other
+     * @param offsets integer array with the start of every cell and,
+     * as last element, the end of the last cell
+     * @param miss array of booleans for missing values, or null
+     * @param digits int with the number of characters to keep
+     * @param result List of Integer to store the bytes of the digest
+     * @param base64 array to store the characters of the base64 encoding
+     * @param hex StringBuilder to store the hexadecimal representation
+     * @return String with base64 encoding
+     * @throws UnsupportedEncodingException
+     */
+    public String RUNF5(final byte[] data, final int[] offsets, boolean miss[], int digits,
+            List<Integer> result, Character[] base64, StringBuilder hex)
+            throws UnsupportedEncodingException, UnfException {
+        boolean utf8 = orencoding.equals(encoding) && Charset.isSupported(encoding)
+                && StandardCharsets.UTF_8.equals(Charset.forName(encoding))
+                && !RoundRoutines.getConvertToNumber();
+        byte[] eol = (nullbyte) ? new byte[]{(byte) creturn, (byte) zeroscape}
+                : new byte[]{(byte) creturn};
+        int nv = offsets.length - 1;
+        for (int k = 0; k < nv; ++k) {
+            if (miss != null && miss[k]) {
+                md.update(UnfTokens.MISSING);
+                continue;
+            }
+            int start = offsets[k];
+            int end = offsets[k + 1];
+            if (!utf8 || !updateUtf8(data, start, end, digits, eol)) {
+                md = UNF3(new String(data, start, end - start, StandardCharsets.UTF_8),
+                        digits, md, false);
+            }
+        }
+        return finish(result, base64, hex);
+    }
+
+    /**
+     * Digests the canonical form of a UTF-8 cell without decoding it.
+     * The blank rule and the truncation count UTF-16 chars, as for
+     * Strings; a cut between the two chars of a surrogate pair leaves
+     * a lone surrogate, which is encoded as '?'.
+     *
+     * @param data byte array with the cell
+     * @param start index of the first byte of the cell
+     * @param end index after the last byte of the cell
+     * @param digits int with the number of characters to keep
+     * @param eol byte array with the end of line and null byte
+     * @return boolean false if the cell is not well-formed UTF-8 and
+     * nothing was digested
+     */
+    private boolean updateUtf8(byte[] data, int start, int end, int digits, byte[] eol) {
+        if (start > end) {
+            throw new IndexOutOfBoundsException("cell from " + start + " to " + end);
+        }
+        int k = start;
+        boolean blank = true;
+        // ascii prefix: one byte per char
+        while (k < end && data[k] >= 0) {
+            if (data[k] > ' ') {
+                blank = false;
+            }
+            ++k;
+        }
+        int cut;
+        boolean half = false;
+        if (k == end) {
+            int ln = end - start;
+            if (blank) {
+                cut = start + ((ln > digits) ? digits - 1 : 0);
+            } else {
+                cut = start + Math.min(ln, digits);
+            }
+        } else {
+            // with other chars the cell is not blank
+            int chars = k - start;
+            if (chars >= digits) {
+                cut = start + digits;
+            } else {
+                cut = end;
+                while (k < end) {
+                    int sz = utf8Length(data, k, end);
+                    if (sz < 0) {
+                        return false;
+                    }
+                    int n = (sz == 4) ? 2 : 1;
+                    if (chars + n > digits) {
+                        cut = k;
+                        half = chars < digits;
+                        break;
+                    }
+                    chars += n;
+                    k += sz;
+                }
+            }
+        }
+        md.update(data, start, cut - start);
+        if (half) {
+            md.update((byte) '?');
+        }
+        md.update(eol);
+        return true;
+    }
+
+    /**
+     * @param data byte array
+     * @param k index of the first byte of a char
+     * @param end index after the last byte
+     * @return number of bytes of the char starting at k, or -1 if
+     * they are not well-formed UTF-8
+     */
+    private static int utf8Length(byte[] data, int k, int end) {
+        int b = data[k] & 0xFF;
+        if (b < 0x80) {
+            return 1;
+        }
+        int sz;
+        int lo = 0x80;
+        int hi = 0xBF;
+        if (b >= 0xC2 && b <= 0xDF) {
+            sz = 2;
+        } else if (b >= 0xE0 && b <= 0xEF) {
+            sz = 3;
+            if (b == 0xE0) {
+                lo = 0xA0; // overlong
+            } else if (b == 0xED) {
+                hi = 0x9F; // surrogates
+            }
+        } else if (b >= 0xF0 && b <= 0xF4) {
+            sz = 4;
+            if (b == 0xF0) {
+                lo = 0x90; // overlong
+            } else if (b == 0xF4) {
+                hi = 0x8F; // above U+10FFFF
+            }
+        } else {
+            return -1;
+        }
+        if (k + sz > end) {
+            return -1;
+        }
+        int c = data[k + 1] & 0xFF;
+        if (c < lo || c > hi) {
+            return -1;
+        }
+        for (int j = 2; j < sz; ++j) {
+            if ((data[k + j] & 0xC0) != 0x80) {
+                return -1;
+            }
+        }
+        return sz;
+    }
+
+    /**
+     * Completes the digest and encodes the most significant bytes
+     *
+     * @param result List of Integer to store the bytes of the digest
+     * @param base64 array to store the characters of the base64 encoding
+     * @param hex StringBuilder to store the hexadecimal representation
+     * @return String with base64 encoding
+     */
+    private String finish(List<Integer> result, Character[] base64, StringBuilder hex) {
         /**SHA256 produces, by default, 32 byte digest**/
-        byte[] hash = md.digest();
+        hash = md.digest();
         md.reset();
         if (hash.length > 32) {
             mLog.finer("unfString: hash has more than 32 bytes.." + hash.length);
         }
 
-        // most significant 128 bits are used by dvn in UNFv5
-        byte[] v5hash = truncateHash(hash,v5bitsize[0]);
-        for (k = 0; k < v5hash.length; ++k) {
+        // most significant hsize bits, 128 by default as used by dvn in UNFv5
+        byte[] v5hash = UnfDigestUtils.truncateHash(hash, hsize);
+        for (int k = 0; k < v5hash.length; ++k) {
             result.add(v5hash[k] & 0xFF);
         }
         String rtobase64 = Base64Encoding.tobase64(v5hash, false);
@@ -198,16 +468,6 @@ public class UnfString<T extends CharSequence> implements UnfCons {
         return rtobase64;
     }
 
-    byte[] truncateHash(byte[] hash,int n){
-        //TODO: are all the truncation values on byte boundaries
-        assert n%8 == 0;
-        int bits = n/8;
-        byte[] rhash = new byte[bits];
-        for (int x=0;x<bits;x++){
-            rhash[x] = hash[x];
-        }
-        return rhash;
-    }
 
     /**
      * Updates the MessageDigest previous with the bytes in obj
@@ -223,61 +483,225 @@ public class UnfString<T extends CharSequence> implements UnfCons {
             MessageDigest previous, boolean miss)
             throws UnsupportedEncodingException, UnfException {
         if (!miss) {
-            mLog.finer(obj.toString());
-            String res = "";
-            if (!obj.equals("")) {
-                res = RoundRoutines.Genround(obj, digits, false);
-            } else {
-                res += creturn;
-                if (nullbyte) {
-                    res += zeroscape;
+            if (!RoundRoutines.isNumeric(obj)) {
+                // the canonical form is encoded from the reusable buffer,
+                // without a String
+                if (cache != null && obj instanceof String && obj.length() <= digits) {
+                    updateCached((String) obj, digits);
+                } else {
+                    update(rstr.normalize(obj, digits, nullbyte));
                 }
-            }
-            mLog.finer(res);
-            if (res == null || (res.equals("") && !obj.equals(obj))) {
-                mLog.severe("UNF3: Genround returns null or empty String");
                 return previous;
             }
-            int sz = res.length();
-            if (nullbyte && !(res.charAt(sz - 1) == zeroscape)) {
-                res += zeroscape;
+            byte[] bint = numericBytes(obj, digits);
+            if (bint != null) {
+                //md5_append in Micah code
+                md.update(bint);
             }
-            String dec[] = new String[2];
-            dec[FINAL_ENC] = encoding;
-            dec[ORG_ENC] = orencoding;
-            byte[] bt = res.getBytes(orencoding);
+        }
 
-            byte[] tmpu = null;
+        if (miss) {
+            md.update(UnfTokens.MISSING);
+        }
 
-            tmpu = UtilsConverter.byteConverter(bt, dec);
+        return previous;
+    }
 
-            if (tmpu == null) {
-                mLog.severe("UNF3: CanonalizeUnicode returns null");
-                return previous;
-            }
-            byte[] bint = tmpu;
+    /**
+     * Writes the canonical form of a cell through Genround, which
+     * writes strings of digits as numbers when they are converted
+     *
+     * @param obj CharSequence with the cell
+     * @param digits integer for precision arithmetic
+     * @return byte array to feed the MessageDigest, or null
+     * @throws UnsupportedEncodingException
+     */
+    private byte[] numericBytes(CharSequence obj, int digits)
+            throws UnsupportedEncodingException, UnfException {
+        String res = "";
+        if (!obj.equals("")) {
+            res = RoundRoutines.Genround(obj, digits, false);
+        } else {
+            res += creturn;
             if (nullbyte) {
-                bint = UnfDigestUtils.eliminateZeroPadding(tmpu, bt);
+                res += zeroscape;
             }
-            String tmp0 = "";
-            int cnt = 0;
-            for (int n = 0; n < bint.length; ++n) {
-                tmp0 = tmp0 + "\t" + bint[n];
-                cnt++;
-                if (cnt % 10 == 0) {
-                    tmp0 += "\n";
+        }
+        mLog.finer(res);
+        if (res == null || (res.equals("") && !obj.equals(obj))) {
+            mLog.severe("UNF3: Genround returns null or empty String");
+            return null;
+        }
+        int sz = res.length();
+        if (nullbyte && !(res.charAt(sz - 1) == zeroscape)) {
+            res += zeroscape;
+        }
+        byte[] bt = res.getBytes(orencoding);
+
+        byte[] tmpu = null;
+
+        tmpu = transcoder().convert(bt);
+
+        if (tmpu == null) {
+            mLog.severe("UNF3: CanonalizeUnicode returns null");
+            return null;
+        }
+        byte[] bint = tmpu;
+        if (nullbyte) {
+            bint = UnfDigestUtils.eliminateZeroPadding(tmpu, bt);
+        }
+        return bint;
+    }
+
+    /**
+     * Writes the canonical bytes of every entry of a dictionary once;
+     * a null entry is a missing value
+     *
+     * @param dict array of CharSequence with the values of a column
+     * @param digits int with the number of characters to keep
+     * @return UnfByteTable with an entry for each element of dict
+     * @throws UnsupportedEncodingException
+     */
+    public UnfByteTable canonTable(final CharSequence[] dict, int digits)
+            throws UnsupportedEncodingException, UnfException {
+        return canonTable(dict, 0, dict.length, digits);
+    }
+
+    /**
+     * Writes the canonical bytes of a slice of an array, an entry for
+     * each element; a null element is a missing value
+     *
+     * @param dict array of CharSequence
+     * @param off index of the first element
+     * @param len number of elements
+     * @param digits int with the number of characters to keep
+     * @return UnfByteTable with an entry for each element of the slice
+     * @throws UnsupportedEncodingException
+     */
+    public UnfByteTable canonTable(final CharSequence[] dict, int off, int len, int digits)
+            throws UnsupportedEncodingException, UnfException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int[] offsets = new int[len + 1];
+        for (int j = 0; j < len; ++j) {
+            int k = off + j;
+            offsets[j] = data.size();
+            if (dict[k] == null) {
+                data.write(UnfTokens.MISSING, 0, UnfTokens.MISSING.length);
+            } else if (!RoundRoutines.isNumeric(dict[k])) {
+                int n = encode(rstr.normalize(dict[k], digits, nullbyte));
+                data.write(encoded, 0, n);
+            } else {
+                byte[] bint = numericBytes(dict[k], digits);
+                if (bint != null) {
+                    data.write(bint, 0, bint.length);
                 }
             }
-            mLog.finer("after " + tmp0);
-            //md5_append in Micah code
-            md.update(bint);
         }
+        offsets[len] = data.size();
+        return new UnfByteTable(data.toByteArray(), offsets);
+    }
 
-        if (miss) {
-            byte[] topass = UtilsConverter.getBytes(missv, null);
-            md.update(topass);
+    /**
+     * Feeds a slice of a dictionary-encoded column to the MessageDigest,
+     * the entry of dict for each code; a negative code is a missing
+     * value. The result is the same as for the expanded column.
+     *
+     * @param dict UnfByteTable with the canonical bytes of the dictionary
+     * @param codes array of integer with the indexes in dict
+     * @param off index of the first code
+     * @param len number of codes
+     * @param result List of Integer to store the bytes of the digest
+     * @param base64 array to store the characters of the base64 encoding
+     * @param hex StringBuilder to store the hexadecimal representation
+     * @return String with base64 encoding
+     */
+    public String RUNF5(final UnfByteTable dict, final int[] codes, int off, int len,
+            List<Integer> result, Character[] base64, StringBuilder hex) {
+        dict.update(md, codes, off, len);
+        return finish(result, base64, hex);
+    }
+
+    /**
+     * Feeds the canonical bytes of a cell to md, from the cache if
+     * the value was seen before
+     *
+     * @param obj String with the cell
+     * @param digits int with the number of characters to keep
+     * @throws UnsupportedEncodingException
+     */
+    private void updateCached(String obj, int digits) throws UnsupportedEncodingException {
+        if (cacheConf == null || cacheDigits != digits) {
+            cacheConf = digits + ":" + orencoding + ":" + encoding + ":" + nullbyte;
+            cacheDigits = digits;
+        }
+        byte[] canon = cache.get(cacheConf, obj);
+        if (canon == null) {
+            int n = encode(rstr.normalize(obj, digits, nullbyte));
+            canon = Arrays.copyOf(encoded, n);
+            cache.put(cacheConf, obj, canon);
         }
+        md.update(canon);
+    }
 
-        return previous;
+    /**
+     * Encodes the canonical form of a cell and feeds the bytes to md
+     *
+     * @param canon CharBuffer with the canonical form of a cell
+     * @throws UnsupportedEncodingException
+     */
+    private void update(CharBuffer canon) throws UnsupportedEncodingException {
+        int n = encode(canon);
+        md.update(encoded, 0, n);
+    }
+
+    /**
+     * Encodes the characters with orencoding, replacing what cannot be
+     * encoded as String.getBytes does, and converts them to encoding
+     *
+     * @param canon CharBuffer with the canonical form of a cell
+     * @return number of bytes in encoded
+     * @throws UnsupportedEncodingException
+     */
+    private int encode(CharBuffer canon) throws UnsupportedEncodingException {
+        if (encoder == null || !orencoding.equals(encoderName)) {
+            if (!Charset.isSupported(orencoding)) {
+                throw new UnsupportedEncodingException(orencoding);
+            }
+            encoder = Charset.forName(orencoding).newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            encoderName = orencoding;
+        }
+        int sz = (int) Math.ceil(encoder.maxBytesPerChar() * canon.remaining());
+        if (bytes.capacity() < sz) {
+            bytes = ByteBuffer.allocate(sz);
+        }
+        bytes.clear();
+        encoder.reset();
+        encoder.encode(canon, bytes, true);
+        encoder.flush(bytes);
+        int n = bytes.position();
+        CharsetTranscoder tr = transcoder();
+        if (tr.isIdentity()) {
+            encoded = bytes.array();
+            return n;
+        }
+        int m = tr.transcode(bytes.array(), 0, n);
+        encoded = tr.getBuffer();
+        if (nullbyte) {
+            m = UnfDigestUtils.eliminateZeroPadding(encoded, m, n);
+        }
+        return m;
+    }
+
+    /**
+     * @return CharsetTranscoder from orencoding to encoding,
+     * created once for both
+     */
+    private CharsetTranscoder transcoder() {
+        if (transcoder == null) {
+            transcoder = new CharsetTranscoder(orencoding, encoding);
+        }
+        return transcoder;
     }
 }
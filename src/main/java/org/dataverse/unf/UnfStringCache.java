@@ -0,0 +1,164 @@
+// Copyright 2023 Dataverse Core Team <support@dataverse.org>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// SPDX-License-Identifier: Apache-2.0
+
+/**
+ * Description: Bounded cache from the value of a String cell to the bytes
+ *              of its canonical form, as fed to the MessageDigest.
+ *              Categorical columns repeat a few values many times; with
+ *              the cache each repeated value is normalized and encoded
+ *              once. When full, the least recently used entry is evicted.
+ *
+ *              The bytes depend on the number of characters, the encodings
+ *              and the null byte; the cache holds the entries of one such
+ *              configuration and is cleared when it is used with another.
+ *              The methods are synchronized on one lock, so a cache can
+ *              be shared by threads but is meant for one at a time; the
+ *              parallel paths of UnfEngine, which take an Executor, do
+ *              not use it.
+ *
+ * Usage:  UnfStringCache cache = new UnfStringCache(1000);
+ *         UnfDigest.setStringCache(cache);
+ *         UnfDigest.unf(columns);
+ *         cache.getHitRate();
+ */
+package org.dataverse.unf;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class UnfStringCache {
+
+    /** maximum number of entries */
+    private final int capacity;
+    /** entries in access order, the eldest is evicted first */
+    private final LinkedHashMap<String, byte[]> entries;
+    /** configuration of the bytes in entries */
+    private String config = null;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Constructor
+     * @param capacity integer with the maximum number of values kept
+     */
+    public UnfStringCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity " + capacity + " is not positive");
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                if (size() > UnfStringCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param conf String with the configuration of the canonical bytes
+     * @param value String with the cell
+     * @return byte array with the canonical bytes of value, or null
+     */
+    synchronized byte[] get(String conf, String value) {
+        byte[] res = conf.equals(config) ? entries.get(value) : null;
+        if (res != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return res;
+    }
+
+    /**
+     * @param conf String with the configuration of the canonical bytes
+     * @param value String with the cell
+     * @param canon byte array with the canonical bytes of value, not
+     * modified afterwards
+     */
+    synchronized void put(String conf, String value, byte[] canon) {
+        if (!conf.equals(config)) {
+            entries.clear();
+            config = conf;
+        }
+        entries.put(value, canon);
+    }
+
+    /**
+     * @return integer with the maximum number of values kept
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return integer with the number of values kept
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return long with the number of cells found in the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return long with the number of cells not found in the cache
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return long with the number of values evicted
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return double with the fraction of cells found in the cache,
+     * 0 before the first lookup
+     */
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return (total == 0) ? 0.0 : (double) hits / total;
+    }
+
+    /**
+     * Removes the values and resets the counters
+     */
+    public synchronized void clear() {
+        entries.clear();
+        config = null;
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "UnfStringCache[size=" + entries.size() + ", capacity=" + capacity
+                + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+}
@@ -0,0 +1,76 @@
+// Copyright 2023 Dataverse Core Team <support@dataverse.org>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// SPDX-License-Identifier: Apache-2.0
+
+/**
+ * Description: The bytes fed to the MessageDigest for values whose
+ *              canonical form does not depend on the data: missing
+ *              values, positive and negative zero, the special numbers
+ *              and the booleans, with the null byte when it is appended.
+ *
+ *              The tokens are ascii, so they are the bytes of the final
+ *              encoding whenever it writes ascii as single bytes; the
+ *              missing value is three null bytes in any encoding.
+ *              The arrays are shared and must not be modified.
+ */
+package org.dataverse.unf;
+
+import java.nio.charset.StandardCharsets;
+
+final class UnfTokens implements UnfCons {
+
+    /** missing value */
+    static final byte[] MISSING = new String(missv).getBytes(StandardCharsets.US_ASCII);
+    static final byte[] PLUS_ZERO = token("+0.e+");
+    static final byte[] MINUS_ZERO = token("-0.e+");
+    static final byte[] NAN = token("+nan");
+    static final byte[] PLUS_INF = token("+inf");
+    static final byte[] MINUS_INF = token("-inf");
+    static final byte[] TRUE = bool("1");
+    static final byte[] FALSE = bool("0");
+
+    private UnfTokens() {
+    }
+
+    /**
+     * @param numb double value
+     * @return the token of numb if it is 0, NaN or infinite, otherwise null
+     */
+    static byte[] special(double numb) {
+        if (numb == 0.0d) {
+            return (Double.doubleToRawLongBits(numb) < 0) ? MINUS_ZERO : PLUS_ZERO;
+        }
+        if (Double.isNaN(numb)) {
+            return NAN;
+        }
+        if (Double.isInfinite(numb)) {
+            return (numb > 0) ? PLUS_INF : MINUS_INF;
+        }
+        return null;
+    }
+
+    /** numbers end with the end of line */
+    private static byte[] token(String canon) {
+        return bool(canon + creturn);
+    }
+
+    /** booleans do not */
+    private static byte[] bool(String canon) {
+        if (nullbyte) {
+            canon += zeroscape;
+        }
+        return canon.getBytes(StandardCharsets.US_ASCII);
+    }
+}
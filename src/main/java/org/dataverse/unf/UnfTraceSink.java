@@ -0,0 +1,52 @@
+// Copyright 2023 Dataverse Core Team <support@dataverse.org>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// SPDX-License-Identifier: Apache-2.0
+
+/**
+ * Description: Receives every byte fed to the MessageDigest of a
+ *              column, to debug a unf: the normalized values, and the
+ *              tokens of missing values, zero and the special numbers,
+ *              from every path that calculates a column. Concatenated,
+ *              the bytes traced for a column are the bytes it hashes.
+ *              Tracing is off unless a sink is set with
+ *              UnfDigest.setTraceSink; without a sink the calculators
+ *              build no diagnostic strings.
+ *
+ *              The sink is called once per update of the digest, which
+ *              is the bytes of one value on most paths. Byte cells are
+ *              traced in parts, and the blocks of a column calculated
+ *              on an Executor by UnfEngine arrive as runs of many values.
+ *
+ *              A calculator takes the sink when it is constructed and
+ *              calls it from the thread that calculates the column, so
+ *              a sink shared by parallel columns must be thread-safe.
+ *
+ * Usage:  UnfDigest.setTraceSink((source, bytes, off, len) ->
+ *                 System.err.println(source + " " + Arrays.toString(
+ *                         Arrays.copyOfRange(bytes, off, off + len))));
+ */
+package org.dataverse.unf;
+
+public interface UnfTraceSink {
+
+    /**
+     * @param source String with the name of the calculator
+     * @param bytes byte array with the bytes hashed; it may be
+     * reused after the call returns
+     * @param off index of the first byte
+     * @param len number of bytes
+     */
+    void trace(String source, byte[] bytes, int off, int len);
+}
@@ -0,0 +1,48 @@
+// Copyright 2023 Dataverse Core Team <support@dataverse.org>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.dataverse.unf;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class CharsetTranscoderTest {
+
+    /**
+     * Every byte value, and a few chars that are malformed or cannot
+     * be encoded, convert as with UtilsConverter.byteConverter.
+     */
+    @Test
+    void testConvert() throws Exception {
+        byte[] all = new byte[256];
+        for (int b = 0; b < 256; ++b) {
+            all[b] = (byte) b;
+        }
+        String text = "café € 😀 \ud800 中\0";
+        String[] encs = {"UTF-8", "ISO-8859-1", "windows-1252", "UTF-16", "US-ASCII"};
+        for (String from : encs) {
+            for (String to : encs) {
+                CharsetTranscoder tr = new CharsetTranscoder(from, to);
+                for (byte[] bin : new byte[][]{all, text.getBytes(from)}) {
+                    String[] dec = {to, from};
+                    assertArrayEquals(UtilsConverter.byteConverter(bin, dec), tr.convert(bin),
+                            from + " to " + to);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+// Copyright 2023 Dataverse Core Team <support@dataverse.org>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.dataverse.unf;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoundNumberTest {
+
+    private static String genround(RoundNumber rout, double numb, int digits) {
+        byte[] buf = new byte[RoundNumber.maxBytes(digits)];
+        int end = rout.GenroundBytes(numb, digits, buf, 0);
+        return new String(buf, 0, end, StandardCharsets.US_ASCII);
+    }
+
+    private static String genround(RoundNumber rout, long numb, int digits) {
+        byte[] buf = new byte[RoundNumber.maxBytes(digits)];
+        int end = rout.GenroundBytes(numb, digits, buf, 0);
+        return new String(buf, 0, end, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Canonical forms as produced by the String.format based Genround.
+     */
+    @Test
+    void testGenroundBytes_double() {
+        RoundNumber rout = new RoundNumber();
+        assertEquals("+7.5216e+1\n", genround(rout, 75.216, 7));
+        assertEquals("+0.e+\n", genround(rout, 0.0, 7));
+        assertEquals("-0.e+\n", genround(rout, -0.0, 7));
+        assertEquals("+nan\n", genround(rout, Double.NaN, 7));
+        assertEquals("-inf\n", genround(rout, Double.NEGATIVE_INFINITY, 7));
+        assertEquals("+1.23456e+6\n", genround(rout, 1234565.0, 6));
+        assertEquals("+1.23458e+6\n", genround(rout, 1234575.0, 6));
+        assertEquals("+1.2346e-4\n", genround(rout, 0.000123456789, 5));
+        assertEquals("+1.e+1\n", genround(rout, 9.9999995, 7));
+        assertEquals("-6.02214076e+23\n", genround(rout, -6.02214076e23, 9));
+        assertEquals("+1.e-300\n", genround(rout, 1.0E-300, 7));
+        assertEquals("+1.79769313486232e+308\n", genround(rout, Double.MAX_VALUE, 15));
+    }
+
+    /**
+     * Integers give the same canonical form as their double value.
+     */
+    @Test
+    void testGenroundBytes_long() {
+        RoundNumber rout = new RoundNumber();
+        assertEquals("+0.e+\n", genround(rout, 0L, 7));
+        assertEquals("+1.2e+5\n", genround(rout, 120000L, 7));
+        assertEquals("+1.23456e+6\n", genround(rout, 1234565L, 6));
+        assertEquals("-1.234568e+7\n", genround(rout, -12345675L, 7));
+        assertEquals("-1.234566e+7\n", genround(rout, -12345665L, 7));
+        assertEquals("+9.00719925474099e+15\n", genround(rout, 9007199254740993L, 15));
+        assertEquals("-9.223372e+18\n", genround(rout, Long.MIN_VALUE, 7));
+    }
+
+    /**
+     * BigDecimal keeps the digits its double value would lose;
+     * values out of the range of double are 0 or infinite as before.
+     */
+    @Test
+    void testGenroundBytes_bigNumbers() {
+        RoundNumber rout = new RoundNumber();
+        byte[] buf = new byte[RoundNumber.maxBytes(15)];
+        int end = rout.GenroundBytes(new BigDecimal("0.12345650000000000001"), 6, buf, 0);
+        assertEquals("+1.23457e-1\n", new String(buf, 0, end, StandardCharsets.US_ASCII));
+        end = rout.GenroundBytes(new BigDecimal("-12345678901234567890.5"), 15, buf, 0);
+        assertEquals("-1.23456789012346e+19\n", new String(buf, 0, end, StandardCharsets.US_ASCII));
+        end = rout.GenroundBytes(new BigDecimal("1E-400"), 7, buf, 0);
+        assertEquals("+0.e+\n", new String(buf, 0, end, StandardCharsets.US_ASCII));
+        end = rout.GenroundBytes(new BigInteger("120000"), 7, buf, 0);
+        assertEquals("+1.2e+5\n", new String(buf, 0, end, StandardCharsets.US_ASCII));
+        end = rout.GenroundBytes(BigInteger.ONE.shiftLeft(1024).negate(), 7, buf, 0);
+        assertEquals("-inf\n", new String(buf, 0, end, StandardCharsets.US_ASCII));
+        assertTrue(RoundNumber.isSpecial(BigDecimal.ZERO));
+        assertTrue(RoundNumber.isSpecial(new BigDecimal("1E-400")));
+        assertFalse(RoundNumber.isSpecial(new BigDecimal("-12345678901234567890.5")));
+        assertTrue(RoundNumber.isSpecial(BigInteger.ZERO));
+        assertTrue(RoundNumber.isSpecial(BigInteger.ONE.shiftLeft(1024).negate()));
+        assertFalse(RoundNumber.isSpecial(new BigInteger("120000")));
+    }
+
+    /**
+     * Table entries hold the canonical form with the null byte;
+     * MAX_VALUE is a missing value and has the form of NaN.
+     */
+    @Test
+    void testByteAndShortTables() {
+        UnfByteTable bytes = RoundNumber.byteTable(7);
+        assertEquals(256, bytes.size());
+        assertEquals("-1.28e+2\n\0", new String(bytes.get(Byte.MIN_VALUE & 0xFF), StandardCharsets.US_ASCII));
+        assertEquals("+nan\n\0", new String(bytes.get(Byte.MAX_VALUE & 0xFF), StandardCharsets.US_ASCII));
+
+        UnfByteTable shorts = RoundNumber.shortTable(2);
+        assertEquals(65536, shorts.size());
+        assertEquals("+1.2e+4\n\0", new String(shorts.get(12345), StandardCharsets.US_ASCII));
+        assertEquals("+0.e+\n\0", new String(shorts.get(0), StandardCharsets.US_ASCII));
+        assertEquals("+nan\n\0", new String(shorts.get(Short.MAX_VALUE & 0xFFFF), StandardCharsets.US_ASCII));
+    }
+}
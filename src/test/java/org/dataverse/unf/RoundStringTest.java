@@ -0,0 +1,70 @@
+// Copyright 2023 Dataverse Core Team <support@dataverse.org>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// SPDX-License-Identifier: Apache-2.0
+
+package org.dataverse.unf;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RoundStringTest {
+
+    /**
+     * Canonical forms as produced by the String.format based Genround.
+     */
+    @Test
+    void testNormalize() {
+        RoundString rs = new RoundString();
+        assertEquals("abc\n\0", rs.normalize("abc", 128, true).toString());
+        assertEquals("abc\n", rs.normalize("abc", 128, false).toString());
+        assertEquals("ab\n\0", rs.normalize("abc", 2, true).toString());
+        assertEquals("\n\0", rs.normalize("", 128, true).toString());
+        // blank cells are empty unless longer than digits
+        assertEquals("\n\0", rs.normalize(" \t\r\n", 4, true).toString());
+        assertEquals(" \t\r\n\0", rs.normalize(" \t\r\n ", 4, true).toString());
+        // leading blanks of other cells are kept
+        assertEquals("  a\n\0", rs.normalize(new StringBuilder("  a  "), 3, true).toString());
+        // the truncation counts chars, as String.format did
+        assertEquals("a\ud83d\n\0", rs.normalize("a\ud83d\ude00", 2, true).toString());
+    }
+
+    /**
+     * Cells read from a Reader have the canonical form of the String.
+     */
+    @Test
+    void testNormalize_reader() throws Exception {
+        RoundString rs = new RoundString();
+        String[] cells = {"", "abc", "abcdef", "   ", "    ", "     ", "    x", "  a  "};
+        for (String cell : cells) {
+            for (int digits = 1; digits <= 6; ++digits) {
+                String expected = rs.normalize(cell, digits, true).toString();
+                assertEquals(expected, rs.normalize(new StringReader(cell), digits, true).toString(),
+                        cell + " " + digits);
+            }
+        }
+    }
+
+    @Test
+    void testGenround() throws UnfException {
+        RoundString rs = new RoundString();
+        assertEquals(String.format("%.5s", "unfinished") + "\n\0", rs.Genround("unfinished", 5));
+        assertEquals("short\n", rs.Genround("short", 128, false));
+        assertEquals("  \n\0", RoundRoutines.Genround("    ", 3, true));
+        assertEquals("word\n\0", RoundRoutines.Genround("word", 4, true));
+    }
+}
@@ -19,16 +19,33 @@ package org.dataverse.unf;
 import org.junit.jupiter.api.Test;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  *
@@ -53,6 +70,97 @@ class UNF6UtilTest {
         assertEquals(expResult, result);
     }
     
+    /**
+     * Test of calculateUNF method on a slice of an array of double.
+     */
+    @Test
+    void testCalculateUNF_doubleArrSlice() throws Exception {
+        List testData = readFileData("test/DoubleTest");
+        double[] numb = new double[testData.size() + 2];
+        String expResult =  (String) testData.get(0);
+        numb[0] = -1.5;
+        numb[numb.length - 1] = Double.NaN;
+        for (int i=1; i < testData.size(); i++){
+            numb[i] = Double.parseDouble((String) testData.get(i));
+        }
+        String result = UNFUtil.calculateUNF(numb, 1, testData.size() - 1);
+        assertEquals(expResult, result);
+        Double[] boxed = new Double[numb.length];
+        for (int i = 0; i < numb.length; i++) {
+            boxed[i] = numb[i];
+        }
+        assertEquals(UNFUtil.calculateUNF(boxed), UNFUtil.calculateUNF(numb));
+    }
+
+    /**
+     * Test of calculateUNF method at several numbers of digits in one pass.
+     */
+    @Test
+    void testCalculateUNF_doubleArrLadder() throws Exception {
+        List testData = readFileData("test/DoubleTest");
+        double[] numb = new double[testData.size()-1];
+        String expResult =  (String) testData.get(0);
+        for (int i=1; i < testData.size(); i++){
+            numb[i-1] = Double.parseDouble((String) testData.get(i));
+        }
+        int[] ndigits = {5, 7, 9, 15};
+        String[] result = UNFUtil.calculateUNF(numb, ndigits);
+        assertEquals(ndigits.length, result.length);
+        assertEquals(expResult, result[1]);
+        for (int i = 0; i < ndigits.length; i++) {
+            assertEquals(UnfDigest.unf(numb, 0, numb.length, ndigits[i])[0], result[i]);
+        }
+    }
+
+    /**
+     * Test of the hash sizes: 192 and 256 bits extend the 128 bits digest.
+     */
+    @Test
+    void testUnfResult_doubleArr() throws Exception {
+        List testData = readFileData("test/DoubleTest");
+        double[] numb = new double[testData.size()-1];
+        String expResult =  (String) testData.get(0);
+        for (int i=1; i < testData.size(); i++){
+            numb[i-1] = Double.parseDouble((String) testData.get(i));
+        }
+        UnfResult result = UnfDigest.unfResult(numb, 0, numb.length);
+        assertEquals(expResult, result.getUnf());
+        String[] unfs = result.getUnfs();
+        assertEquals(expResult, unfs[0]);
+        assertEquals(UnfDigest.unf(numb, 0, numb.length, 7, 128, 192)[0], unfs[1]);
+        assertEquals(UnfDigest.unf(numb, 0, numb.length, 7, 128, 256)[0], unfs[2]);
+        assertTrue(unfs[2].startsWith("UNF:6:H256:"));
+        assertTrue(result.getHex(256).startsWith(result.getHex(128)));
+    }
+
+    /**
+     * Test of the SHA-512/256 mode: its unf's carry their own extension.
+     */
+    @Test
+    void testCalculateUNF_sha512_256() throws Exception {
+        List testData = readFileData("test/DoubleTest");
+        double[] numb = new double[testData.size()-1];
+        String expResult =  (String) testData.get(0);
+        for (int i=1; i < testData.size(); i++){
+            numb[i-1] = Double.parseDouble((String) testData.get(i));
+        }
+        String[] chr = {"Hello", "World!"};
+        String result;
+        String chrResult;
+        try {
+            UnfDigest.setDigestAlgorithm(UnfCons.SHA512_256);
+            result = UNFUtil.calculateUNF(numb);
+            chrResult = UNFUtil.calculateUNF(chr);
+            assertEquals(result, UnfDigest.unfResult(numb, 0, numb.length).getUnf());
+        } finally {
+            UnfDigest.setDigestAlgorithm(UnfCons.SHA256);
+        }
+        assertTrue(result.startsWith("UNF:6:SHA512/256:"));
+        assertTrue(chrResult.startsWith("UNF:6:SHA512/256:"));
+        assertNotEquals(expResult.substring(6), result.substring(17));
+        assertEquals(expResult, UNFUtil.calculateUNF(numb));
+    }
+
     /**
      * Test of calculateUNF method, of class UNF5Util.
      */
@@ -164,7 +272,157 @@ class UNF6UtilTest {
         String result = UNFUtil.calculateUNF(chr);
         assertEquals(expResult, result);
     }
-    
+
+
+    /**
+     * The UTF-8 bytes of the strings, one cell after the other.
+     */
+    @Test
+    void testCalculateUNF_utf8Cells() throws Exception {
+        System.out.println("calculateUtf8CellsUNF");
+        List testData = readFileData("test/StringTest");
+        String expResult = (String) testData.get(0);
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int[] offsets = new int[testData.size()];
+        for (int i = 1; i < testData.size(); i++) {
+            offsets[i - 1] = data.size();
+            byte[] cell = ((String) testData.get(i)).getBytes(StandardCharsets.UTF_8);
+            data.write(cell, 0, cell.length);
+        }
+        offsets[testData.size() - 1] = data.size();
+        String result = UNFUtil.calculateUNF(data.toByteArray(), offsets, null);
+        assertEquals(expResult, result);
+
+        // truncation inside a surrogate pair, blank and missing cells
+        String[] chr = {"a\ud83d\ude00b", " \t ", null, "caf\u00e9 cr\u00e8me"};
+        boolean[] miss = {false, false, true, false};
+        data.reset();
+        offsets = new int[chr.length + 1];
+        for (int i = 0; i < chr.length; i++) {
+            offsets[i] = data.size();
+            if (chr[i] != null) {
+                byte[] cell = chr[i].getBytes(StandardCharsets.UTF_8);
+                data.write(cell, 0, cell.length);
+            }
+        }
+        offsets[chr.length] = data.size();
+        CharSequence[][] cols = {chr};
+        UnfDigest.setTrnps(false);
+        assertEquals(UnfDigest.unf(cols, 2)[0],
+                UnfDigest.unf(data.toByteArray(), offsets, miss, 2)[0]);
+    }
+
+    /**
+     * A categorical column has the same unf with the cache of
+     * canonical bytes, which finds the repeated values; a cache
+     * smaller than the number of values evicts them.
+     */
+    @Test
+    void testCalculateUNF_stringCache() throws Exception {
+        String[] labels = {"Strongly agree", "Agree", "Disagree", null, "Strongly disagree"};
+        String[] chr = new String[1000];
+        for (int i = 0; i < chr.length; i++) {
+            chr[i] = labels[(i * 7) % labels.length];
+        }
+        String expResult = UNFUtil.calculateUNF(chr);
+        UnfStringCache cache = new UnfStringCache(4);
+        UnfDigest.setStringCache(cache);
+        try {
+            assertEquals(expResult, UNFUtil.calculateUNF(chr));
+        } finally {
+            UnfDigest.setStringCache(null);
+        }
+        assertEquals(4, cache.size());
+        assertEquals(796, cache.getHits());
+        assertEquals(4, cache.getMisses());
+        assertEquals(0, cache.getEvictions());
+        assertEquals(796.0 / 800, cache.getHitRate());
+
+        // the unf's of the columns of a data set are not cached
+        cache = new UnfStringCache(8);
+        UnfDigest.setStringCache(cache);
+        try {
+            UNFUtil.calculateUNF(new String[][]{chr, chr});
+        } finally {
+            UnfDigest.setStringCache(null);
+        }
+        assertEquals(4, cache.size());
+        assertEquals(4, cache.getMisses());
+
+        // nor are the String cells of the columns calculated in parallel
+        String expColumns = UNFUtil.calculateUNF(new String[][]{chr, chr});
+        cache = new UnfStringCache(8);
+        UnfDigest.setStringCache(cache);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            assertEquals(expColumns, UNFUtil.calculateUNF(new String[][]{chr, chr}, pool));
+            assertEquals(expResult, UnfDigest.getEngine().unfResult(chr, pool).getUnf());
+        } finally {
+            UnfDigest.setStringCache(null);
+            pool.shutdown();
+        }
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getMisses());
+
+        // the labels cycle through a cache of 3 and are always evicted
+        cache = new UnfStringCache(3);
+        UnfDigest.setStringCache(cache);
+        try {
+            assertEquals(expResult, UNFUtil.calculateUNF(chr));
+        } finally {
+            UnfDigest.setStringCache(null);
+        }
+        assertEquals(3, cache.size());
+        assertEquals(0, cache.getHits());
+        assertEquals(800, cache.getMisses());
+        assertEquals(797, cache.getEvictions());
+    }
+
+    /**
+     * Cells read from Readers have the unf of the array of Strings,
+     * with missing values, blank cells and cells much longer than
+     * the number of characters kept.
+     */
+    @Test
+    void testUnf_readers() throws Exception {
+        StringBuilder longCell = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            longCell.append("abc\u00e9\ud83d\ude00 ");
+        }
+        StringBuilder blankCell = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            blankCell.append(i % 2 == 0 ? ' ' : '\t');
+        }
+        String[] chr = {"Hello", null, "", blankCell.toString(), longCell.toString(), "  x  ",
+            longCell.substring(0, 127), null, "12345"};
+
+        assertEquals(UNFUtil.calculateUNF(chr), UnfDigest.unf(readers(chr))[0]);
+        for (int cdg : new int[]{1, 5, 128, 1000}) {
+            String expResult = UnfDigest.unfResult(chr, cdg).getUnf();
+            assertEquals(expResult, UnfDigest.unf(readers(chr), cdg)[0]);
+            UnfEngine engine = new UnfEngine(UnfCons.DEF_NDGTS, cdg, UnfCons.DEF_HSZ);
+            assertEquals(engine.unfResult(chr).getUnf(), engine.unfResult(readers(chr)).getUnf());
+            assertEquals(expResult, engine.unfResult(readers(chr)).getUnf());
+        }
+    }
+
+    /**
+     * A dictionary plus codes has the unf of the expanded column.
+     */
+    @Test
+    void testUnf_dictionary() throws Exception {
+        String[] labels = {"Strongly agree", "Agree", " ", "Disagree"};
+        Double[] values = {2.5, -0.0, Double.NaN, 1e-300};
+        int[] codes = {0, 1, 1, -1, 3, 2, 0, 0, 3, -1, 2};
+        String[] chr = new String[codes.length];
+        Double[] numb = new Double[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            chr[i] = (codes[i] < 0) ? null : labels[codes[i]];
+            numb[i] = (codes[i] < 0) ? null : values[codes[i]];
+        }
+        assertEquals(UNFUtil.calculateUNF(chr), UnfDigest.unf(labels, codes)[0]);
+        assertEquals(UNFUtil.calculateUNF(numb), UnfDigest.unf(values, codes)[0]);
+    }    
     
     /**
      * Test of calculateUNF method, of class UNF5Util.
@@ -200,7 +458,331 @@ class UNF6UtilTest {
         String result = UNFUtil.calculateUNF(numb);
         assertEquals(expResult, result);
     }
-    
+
+    /**
+     * One engine shared by several threads gives the unf's of the
+     * static methods with the same parameters.
+     */
+    @Test
+    void testUnfEngine_threads() throws Exception {
+        List testData = readFileData("test/DoubleTest");
+        double[] numb = new double[testData.size()-1];
+        String expResult =  (String) testData.get(0);
+        for (int i=1; i < testData.size(); i++){
+            numb[i-1] = Double.parseDouble((String) testData.get(i));
+        }
+        String[] chr = {"Hello", "World!", null, "  "};
+        final UnfEngine engine = new UnfEngine(9, 4, 256);
+        final String expNumb = UnfDigest.unf(numb, 0, numb.length, 9, 4, 256)[0];
+        final String expChr = UnfDigest.unfResult(chr, 4, 9, 256).getUnf();
+        assertEquals(expResult, new UnfEngine().unfResult(numb, 0, numb.length).getUnf());
+        assertTrue(expNumb.startsWith("UNF:6:X4,N9,H256:"));
+
+        final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int k = 0; k < 200; k++) {
+                        String n = engine.unfResult(numb, 0, numb.length).getUnf();
+                        String c = engine.unfResult(chr).getUnf();
+                        if (!expNumb.equals(n) || !expChr.equals(c)) {
+                            failures.add(n + " " + c);
+                        }
+                    }
+                } catch (Exception ex) {
+                    failures.add(ex.toString());
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(failures.isEmpty(), failures.toString());
+    }
+
+    /**
+     * An engine is built only with a hash size of UnfCons.HSZ_VALUES.
+     */
+    @Test
+    void testUnfEngine_hashSize() throws Exception {
+        for (int hsz : UnfCons.HSZ_VALUES) {
+            assertEquals(hsz, new UnfEngine(7, 128, hsz).getHsize());
+        }
+        assertThrows(IllegalArgumentException.class, () -> new UnfEngine(7, 128, 100));
+        assertThrows(IllegalArgumentException.class, () -> new UnfEngine(7, 128, 0));
+        assertThrows(IllegalArgumentException.class, () -> new UnfEngine(7, 128, 512));
+    }
+
+    /**
+     * The columns calculated in parallel give the unf of the
+     * sequential calculation.
+     */
+    @Test
+    void testCalculateUNF_parallelColumns() throws Exception {
+        Random random = new Random(11);
+        double[][] numb = new double[200][];
+        String[][] str = new String[200][];
+        for (int c = 0; c < numb.length; c++) {
+            numb[c] = new double[1 + random.nextInt(500)];
+            str[c] = new String[numb[c].length];
+            for (int r = 0; r < numb[c].length; r++) {
+                numb[c][r] = random.nextGaussian() * Math.pow(10, random.nextInt(20) - 10);
+                str[c][r] = (r % 17 == 3) ? null : Long.toString(random.nextLong(), 36);
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(UNFUtil.calculateUNF(numb), UNFUtil.calculateUNF(numb, pool));
+            assertEquals(UNFUtil.calculateUNF(str), UNFUtil.calculateUNF(str, pool));
+
+            UnfDataset data = new UnfDataset();
+            data.add(numb[0]).add(str[1]).add(new boolean[]{true, false}).add(new Integer[]{1, null, 3});
+            String[] unfs = {UNFUtil.calculateUNF(numb[0]), UNFUtil.calculateUNF(str[1]),
+                UNFUtil.calculateUNF(new boolean[]{true, false}), UNFUtil.calculateUNF(new Integer[]{1, null, 3})};
+            assertEquals(UnfDigest.addUNFs(unfs), UNFUtil.calculateUNF(data, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * The columns of a skewed data set are started from the most
+     * expensive; the results stay in the order of the columns.
+     */
+    @Test
+    void testUnfResults_longestFirst() throws Exception {
+        String[] text = new String[1000];
+        for (int r = 0; r < text.length; r++) {
+            text[r] = String.format("%0128d", r);
+        }
+        boolean[] flags = new boolean[1000];
+        double[] numb = new double[1000];
+        String[] codes = {"a", "b", null};
+        UnfDataset data = new UnfDataset().add(flags).add(codes).add(numb).add(text);
+        UnfEngine engine = new UnfEngine();
+        assertEquals(Arrays.asList(3, 2, 0, 1), engine.schedule(data.getColumns()));
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            UnfResult[] seq = engine.unfResults(data);
+            UnfResult[] par = engine.unfResults(data, pool);
+            for (int k = 0; k < seq.length; k++) {
+                assertEquals(seq[k].getUnf(), par[k].getUnf());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * A batch of files has the unf's of the files one by one, in
+     * order; a file that cannot be read fails the batch.
+     */
+    @Test
+    void testUnfBatch() throws Exception {
+        Random random = new Random(17);
+        List<UnfBatch.Source> sources = new ArrayList<UnfBatch.Source>();
+        List<String> expected = new ArrayList<String>();
+        for (int f = 0; f < 50; f++) {
+            final double[] numb = new double[1 + random.nextInt(200)];
+            final String[] str = new String[numb.length];
+            for (int r = 0; r < numb.length; r++) {
+                numb[r] = random.nextGaussian();
+                str[r] = Long.toString(random.nextLong(), 36);
+            }
+            sources.add(() -> new UnfDataset().add(numb).add(str));
+            expected.add(UnfDigest.getEngine().unf(new UnfDataset().add(numb).add(str)));
+        }
+        boolean virtuals = true;
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException ex) {
+            virtuals = false;
+        }
+        try (UnfBatch batch = new UnfBatch(UnfDigest.getEngine(), 2, 4)) {
+            System.out.println("UnfBatch on " + (batch.isVirtual() ? "virtual" : "platform") + " threads");
+            if (!virtuals) {
+                assertFalse(batch.isVirtual());
+            }
+            assertEquals(expected, batch.unf(sources));
+
+            sources.set(7, () -> {
+                throw new IOException("unreadable");
+            });
+            assertThrows(IOException.class, () -> batch.unf(sources));
+        }
+    }
+
+    /**
+     * Every digest cloned from the prototype of an algorithm is a new
+     * instance in its initial state.
+     */
+    @Test
+    void testNewDigest() throws Exception {
+        byte[] bytes = "1.e+\n\0".getBytes(StandardCharsets.US_ASCII);
+        MessageDigest first = UnfDigestUtils.newDigest("SHA-256");
+        first.update(bytes);
+        MessageDigest second = UnfDigestUtils.newDigest("SHA-256");
+        assertNotSame(first, second);
+        second.update(bytes);
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(bytes), first.digest());
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(bytes), second.digest());
+        assertEquals("SHA-512/256", UnfDigestUtils.newDigest("SHA-512/256").getAlgorithm());
+        assertThrows(NoSuchAlgorithmException.class, () -> UnfDigestUtils.newDigest("SHA-0"));
+    }
+
+    /**
+     * Updates collected by a DigestBuffer, of any size, give the
+     * digest of the same updates fed one by one.
+     */
+    @Test
+    void testDigestBuffer() throws Exception {
+        Random random = new Random(19);
+        MessageDigest md = new DigestBuffer(UnfDigestUtils.newDigest("SHA-256"));
+        for (int it = 0; it < 20; it++) {
+            MessageDigest plain = MessageDigest.getInstance("SHA-256");
+            int n = random.nextInt(3000);
+            for (int k = 0; k < n; k++) {
+                if (k % 100 == 7) {
+                    byte b = (byte) random.nextInt();
+                    md.update(b);
+                    plain.update(b);
+                } else {
+                    byte[] bytes = new byte[(k % 500 == 3) ? 2 * DigestBuffer.CAPACITY : random.nextInt(20)];
+                    random.nextBytes(bytes);
+                    md.update(bytes, 0, bytes.length);
+                    plain.update(bytes, 0, bytes.length);
+                }
+            }
+            if (it % 5 == 4) {
+                md.update(new byte[]{1, 2, 3});
+                md.reset();
+            } else {
+                assertArrayEquals(plain.digest(), md.digest());
+            }
+        }
+    }
+
+    /**
+     * A trace sink receives every byte hashed for a column, missing
+     * values and special numbers included, which digest to the hash of
+     * the column; without a sink nothing is traced.
+     */
+    @Test
+    void testTraceSink() throws Exception {
+        double[] numb = {1.5, -2.0, Double.NaN, 1e10};
+        String[] chr = {"Hello", "12", "", "\u00e9t\u00e9"};
+        final MessageDigest traced = MessageDigest.getInstance("SHA-256");
+        final List<String> sources = Collections.synchronizedList(new ArrayList<String>());
+        UnfDigest.setTraceSink((source, bytes, off, len) -> {
+            sources.add(source);
+            traced.update(bytes, off, len);
+        });
+        try {
+            UnfResult res = UnfDigest.unfResult(numb, 0, numb.length);
+            assertEquals(Collections.nCopies(numb.length, "UnfNumber"), sources);
+            assertArrayEquals(res.getHash(), traced.digest());
+
+            sources.clear();
+            res = UnfDigest.unfResult(chr);
+            assertEquals(Collections.nCopies(chr.length, "UnfString"), sources);
+            assertArrayEquals(res.getHash(), traced.digest());
+
+            Double[] special = {1.5, null, Double.NaN, 0.0};
+            sources.clear();
+            res = UnfDigest.unfResult(special, 0, special.length);
+            assertEquals(Collections.nCopies(special.length, "UnfNumber"), sources);
+            assertArrayEquals(res.getHash(), traced.digest());
+
+            UnfEngine engine = new UnfEngine(7, 128, 256);
+            short[] table = {0, 7, Short.MAX_VALUE, -3};
+            res = engine.unfResult(table, 0, table.length);
+            assertArrayEquals(res.getHash(), traced.digest());
+            byte[] data = "abc".getBytes(StandardCharsets.UTF_8);
+            res = engine.unfResult(data, new int[]{0, 1, 1, 3}, new boolean[]{false, true, false});
+            assertArrayEquals(res.getHash(), traced.digest());
+            String[] nulls = {"a", null, "b"};
+            res = engine.unfResult(nulls);
+            assertArrayEquals(res.getHash(), traced.digest());
+        } finally {
+            UnfDigest.setTraceSink(null);
+        }
+        sources.clear();
+        UnfDigest.unfResult(chr);
+        assertTrue(sources.isEmpty());
+    }
+
+    /**
+     * A long column normalized in blocks on a pool, and digested in
+     * order, has the same unf as the sequential calculation.
+     */
+    @Test
+    void testUnfResult_pipelinedColumn() throws Exception {
+        Random random = new Random(13);
+        int len = 5 * UnfEngine.BLOCK_ROWS + 123;
+        double[] numb = new double[len];
+        String[] str = new String[len];
+        for (int r = 0; r < len; r++) {
+            numb[r] = (r % 97 == 5) ? Double.NaN : random.nextGaussian() * Math.pow(10, random.nextInt(20) - 10);
+            str[r] = (r % 89 == 7) ? null : Long.toString(random.nextLong(), 36) + "\u00e9";
+        }
+        UnfEngine engine = new UnfEngine(7, 128, 256);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(engine.unfResult(numb, 0, len).getUnf(), engine.unfResult(numb, 0, len, pool).getUnf());
+            assertEquals(engine.unfResult(numb, 100, len - 200).getUnf(),
+                    engine.unfResult(numb, 100, len - 200, pool).getUnf());
+            assertEquals(engine.unfResult(str).getUnf(), engine.unfResult(str, pool).getUnf());
+            assertEquals(engine.unfResult(new String[0]).getUnf(), engine.unfResult(new String[0], pool).getUnf());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * The static methods keep only the fingerprint of the last call,
+     * whether or not they build the signature.
+     */
+    @Test
+    void testUnf_singleFingerprint() throws Exception {
+        double[] numb = {1.5, -2.0, Double.NaN};
+        String[] chr = {"Hello", null};
+        boolean unfObj = UnfDigest.getUnfObj();
+        try {
+            for (boolean build : new boolean[]{true, false}) {
+                UnfDigest.setUnfObj(build);
+                for (int k = 0; k < 1000; k++) {
+                    UnfDigest.unf(numb, 0, numb.length);
+                    assertFingerprints(build);
+                    UnfDigest.unfV(chr, 128);
+                    assertFingerprints(build);
+                }
+            }
+        } finally {
+            UnfDigest.setUnfObj(unfObj);
+        }
+    }
+
+    private static void assertFingerprints(boolean build) {
+        int size = UnfDigest.getSignature().getFingerprints().size();
+        if (build) {
+            assertEquals(1, size);
+        } else {
+            assertTrue(size <= 1, "fingerprints " + size);
+        }
+        assertEquals(size, new UnfDigest().getFingerprint().size());
+    }
+
+    private static List<Reader> readers(String[] cells) {
+        List<Reader> res = new ArrayList<Reader>();
+        for (String cell : cells) {
+            res.add(cell == null ? null : new StringReader(cell));
+        }
+        return res;
+    }
+
     private List<String> readFileData(String filename) {
         List<String> retList = new ArrayList<>();
         //File file = new File(filename);